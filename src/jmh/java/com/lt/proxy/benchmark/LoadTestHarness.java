@@ -0,0 +1,200 @@
+package com.lt.proxy.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import com.lt.ProxyApplication;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * End-to-end closed-loop load test: starts a local stub upstream and the proxy application on
+ * ephemeral ports, drives {@code concurrency} clients against the proxy for {@code duration}
+ * seconds and reports throughput, latency percentiles and the JVM allocation rate.
+ *
+ * <p>Arguments are {@code key=value} pairs: {@code path} (/proxy), {@code concurrency} (32),
+ * {@code duration} (20), {@code warmup} (5), {@code latencyMs} (upstream latency, 10),
+ * {@code bodySize} (upstream body bytes, 16384), {@code distinctUrls} (1000),
+ * {@code cacheable} (false). Any other {@code proxy.*} key is passed to the application, where the
+ * rate limits, concurrency limits and warm-up are disabled unless set.
+ */
+public final class LoadTestHarness {
+
+    // The loopback clients share one IP and call one stub host: the rate and concurrency limits would
+    // turn most of them away, and the warm-up only delays the start. Overridden by proxy.* arguments.
+    private static final Map<String, String> DEFAULT_PROXY_PROPERTIES = Map.of(
+        "proxy.rate-limit.enabled", "false",
+        "proxy.concurrency-limit.enabled", "false",
+        "proxy.warmup.enabled", "false"
+    );
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String path = options.getOrDefault("path", "/proxy");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "20"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int latencyMs = Integer.parseInt(options.getOrDefault("latencyMs", "10"));
+        int bodySize = Integer.parseInt(options.getOrDefault("bodySize", "16384"));
+        int distinctUrls = Integer.parseInt(options.getOrDefault("distinctUrls", "1000"));
+        boolean cacheable = Boolean.parseBoolean(options.getOrDefault("cacheable", "false"));
+
+        HttpServer upstream = startUpstream(latencyMs, bodySize, cacheable);
+        List<String> applicationArgs = new ArrayList<>();
+        applicationArgs.add("--server.port=0");
+        applicationArgs.add("--logging.level.root=WARN");
+        Map<String, String> proxyProperties = new LinkedHashMap<>(DEFAULT_PROXY_PROPERTIES);
+        options.forEach((key, value) -> {
+            if (key.startsWith("proxy.")) {
+                proxyProperties.put(key, value);
+            }
+        });
+        proxyProperties.forEach((key, value) -> applicationArgs.add("--" + key + "=" + value));
+        ConfigurableApplicationContext application = new SpringApplicationBuilder(ProxyApplication.class)
+            .run(applicationArgs.toArray(new String[0]));
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            String proxyBase = "http://localhost:" + application.getEnvironment().getProperty("local.server.port")
+                + path + "?proxy-url=http://localhost:" + upstream.getAddress().getPort() + "/page/";
+            HttpClient httpClient = HttpClient.newBuilder()
+                                              .version(HttpClient.Version.HTTP_1_1)
+                                              .executor(Executors.newCachedThreadPool())
+                                              .build();
+
+            System.out.printf("Warming up for %ds ...%n", warmup);
+            run(httpClient, clients, proxyBase, concurrency, distinctUrls, warmup);
+
+            System.out.printf(
+                "Running %s with %d clients for %ds (upstream latency %dms, body %d bytes, %d distinct urls, cacheable %s)%n",
+                path, concurrency, duration, latencyMs, bodySize, distinctUrls, cacheable
+            );
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            Result result = run(httpClient, clients, proxyBase, concurrency, distinctUrls, duration);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            Histogram latencies = result.latencies;
+            System.out.printf("requests      %d (%d errors)%n", latencies.getTotalCount(), result.errors);
+            System.out.printf("throughput    %.1f req/s%n", latencies.getTotalCount() / seconds);
+            System.out.printf("latency p50   %.3f ms%n", latencies.getValueAtPercentile(50) / 1e3);
+            System.out.printf("latency p99   %.3f ms%n", latencies.getValueAtPercentile(99) / 1e3);
+            System.out.printf("latency p999  %.3f ms%n", latencies.getValueAtPercentile(99.9) / 1e3);
+            System.out.printf("latency max   %.3f ms%n", latencies.getMaxValue() / 1e3);
+            System.out.printf("allocation    %.1f MB/s (%.1f KB/req, whole JVM incl. load generator)%n",
+                allocated / seconds / (1024 * 1024),
+                latencies.getTotalCount() == 0 ? 0.0 : allocated / 1024.0 / latencies.getTotalCount()
+            );
+        } finally {
+            clients.shutdownNow();
+            application.close();
+            upstream.stop(0);
+        }
+    }
+
+    private static Result run(HttpClient httpClient, ExecutorService clients, String proxyBase,
+                              int concurrency, int distinctUrls, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int client = 0; client < concurrency; client++) {
+            int offset = client;
+            futures.add(clients.submit(() -> {
+                Result result = new Result();
+                int i = offset;
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(proxyBase + (i++ % distinctUrls)))
+                                                     .timeout(Duration.ofSeconds(30))
+                                                     .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            result.errors++;
+                        }
+                    } catch (IOException e) {
+                        result.errors++;
+                    }
+                    result.latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+                return result;
+            }));
+        }
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            Result result = future.get();
+            total.latencies.add(result.latencies);
+            total.errors += result.errors;
+        }
+        return total;
+    }
+
+    private static HttpServer startUpstream(int latencyMs, int bodySize, boolean cacheable) throws IOException {
+        byte[] body = "x".repeat(bodySize).getBytes();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> respond(exchange, body, latencyMs, cacheable));
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body, int latencyMs, boolean cacheable) throws IOException {
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/html");
+        exchange.getResponseHeaders().set("Cache-Control", cacheable ? "max-age=60" : "no-store");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    private static final class Result {
+
+        private final Histogram latencies = new Histogram(TimeUnit.SECONDS.toMicros(60), 3);
+        private long errors;
+    }
+}
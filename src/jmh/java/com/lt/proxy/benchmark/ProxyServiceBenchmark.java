@@ -0,0 +1,126 @@
+package com.lt.proxy.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.HeaderLoggingProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.config.RetryProperties;
+import com.lt.proxy.config.UrlPolicyProperties;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.resilience.Retries;
+import com.lt.proxy.service.ProxyService;
+import com.lt.proxy.service.RequestCoalescer;
+import com.lt.proxy.service.StreamCopier;
+import com.lt.proxy.url.UrlPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Per-call overhead of {@link ProxyService#callUrl(String)} around an in-memory upstream,
+ * i.e. everything the proxy adds on top of the network round-trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyServiceBenchmark {
+
+    private static final String PROXY_URL = "http://www.google.com/some-path?q=benchmark";
+
+    @Param({"1024", "65536"})
+    private int bodySize;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ProxyService proxyService;
+
+    @Setup
+    public void setUp() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_HTML);
+        headers.setCacheControl("max-age=3600");
+        headers.set("some-header-name", "some-header-value");
+        ResponseEntity<ProxyBody> response = new ResponseEntity<>(ProxyBody.of("x".repeat(bodySize)), headers, HttpStatus.OK);
+
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setEnabled(cacheEnabled);
+        ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+        RestTemplate restTemplate = new CannedRestTemplate(response);
+        proxyService = new ProxyService(
+            restTemplate,
+            restTemplate,
+            new StreamCopier(8192),
+            new ResponseCache(cacheProperties),
+            new RequestCoalescer(new CoalescingProperties()),
+            new HeaderLogger(new HeaderLoggingProperties()),
+            proxyMetrics,
+            new CircuitBreakers(new CircuitBreakerProperties(), proxyMetrics),
+            new NegativeCache(new NegativeCacheProperties()),
+            new Retries(new RetryProperties(), proxyMetrics),
+            new ConcurrencyLimiter(new ConcurrencyLimitProperties(), proxyMetrics),
+            new UrlPolicy(new UrlPolicyProperties()),
+            new RateLimiter(disabledRateLimits(), proxyMetrics)
+        );
+    }
+
+    @Benchmark
+    public ProxyBody callUrl() {
+        return proxyService.callUrl(PROXY_URL);
+    }
+
+    // The benchmark measures the service itself, not how fast a host's token bucket refills
+    private static RateLimitProperties disabledRateLimits() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setEnabled(false);
+        return properties;
+    }
+
+    private static final class CannedRestTemplate extends RestTemplate {
+
+        private final ResponseEntity<ProxyBody> response;
+
+        private CannedRestTemplate(ResponseEntity<ProxyBody> response) {
+            this.response = response;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> exchange(URI url, HttpMethod method, HttpEntity<?> requestEntity,
+                                              Class<T> responseType) {
+            return (ResponseEntity<T>) response;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.lt.proxy.application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.service.RequestCoalescer;
+import com.lt.proxy.timing.SlowRequestLog;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final PoolingHttpClientConnectionManager upstreamConnectionManager;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final CircuitBreakers circuitBreakers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final SlowRequestLog slowRequestLog;
+
+    public AdminController(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                           ResponseCache responseCache,
+                           RequestCoalescer requestCoalescer,
+                           CircuitBreakers circuitBreakers,
+                           ConcurrencyLimiter concurrencyLimiter,
+                           SlowRequestLog slowRequestLog) {
+        this.upstreamConnectionManager = upstreamConnectionManager;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    @GetMapping(
+        path = "/upstream-pool",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> upstreamPool() {
+        Map<String, Object> routes = new LinkedHashMap<>();
+        upstreamConnectionManager.getRoutes()
+                                 .forEach(route -> routes.put(
+                                     route.getTargetHost().toHostString(),
+                                     toMap(upstreamConnectionManager.getStats(route))
+                                 ));
+
+        Map<String, Object> body = new LinkedHashMap<>(toMap(upstreamConnectionManager.getTotalStats()));
+        body.put("routes", routes);
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping(
+        path = "/cache",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> cache() {
+        return ResponseEntity.ok(responseCache.stats());
+    }
+
+    @GetMapping(
+        path = "/coalescing",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> coalescing() {
+        return ResponseEntity.ok(requestCoalescer.stats());
+    }
+
+    @GetMapping(
+        path = "/circuit-breakers",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> circuitBreakers() {
+        return ResponseEntity.ok(circuitBreakers.stats());
+    }
+
+    @GetMapping(
+        path = "/concurrency-limits",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> concurrencyLimits() {
+        return ResponseEntity.ok(concurrencyLimiter.stats());
+    }
+
+    @GetMapping(
+        path = "/slow-requests",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<Map<String, Object>> slowRequests() {
+        return ResponseEntity.ok(slowRequestLog.stats());
+    }
+
+    private static Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("pending", stats.getPending());
+        map.put("available", stats.getAvailable());
+        map.put("max", stats.getMax());
+        return map;
+    }
+}
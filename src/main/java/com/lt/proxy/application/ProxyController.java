@@ -1,27 +1,134 @@
 package com.lt.proxy.application;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.service.AsyncProxyService;
+import com.lt.proxy.service.BatchProxyService;
+import com.lt.proxy.service.BatchResult;
 import com.lt.proxy.service.ProxyService;
+import com.lt.proxy.timing.RequestTiming;
 
 @RestController
 @RequestMapping("/proxy")
 public class ProxyController {
 
     private final ProxyService proxyService;
+    private final AsyncProxyService asyncProxyService;
+    private final BatchProxyService batchProxyService;
 
-    public ProxyController(ProxyService proxyService) {
+    public ProxyController(ProxyService proxyService, AsyncProxyService asyncProxyService, BatchProxyService batchProxyService) {
         this.proxyService = proxyService;
+        this.asyncProxyService = asyncProxyService;
+        this.batchProxyService = batchProxyService;
     }
 
     @GetMapping(
         produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.TEXT_HTML_VALUE}
     )
-    public ResponseEntity<String> callUrl(@RequestParam("proxy-url") String proxyUrl) {
-        return ResponseEntity.ok(proxyService.callUrl(proxyUrl));
+    public ResponseEntity<String> callUrl(@RequestParam("proxy-url") String proxyUrl, HttpServletResponse response) throws IOException {
+        ProxyBody body = proxyService.callUrl(proxyUrl);
+        try {
+            String serverTiming = RequestTiming.current().serverTiming();
+            if (!body.isSpilled()) {
+                ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+                if (serverTiming != null) {
+                    ok.header(RequestTiming.SERVER_TIMING_HEADER, serverTiming);
+                }
+                return ok.body(body.getText());
+            }
+            // Too large to be held in memory: the raw upstream bytes are copied from the temp file
+            response.setStatus(HttpStatus.OK.value());
+            if (serverTiming != null) {
+                response.setHeader(RequestTiming.SERVER_TIMING_HEADER, serverTiming);
+            }
+            if (body.getContentType() != null) {
+                response.setContentType(body.getContentType().toString());
+            }
+            response.setContentLengthLong(body.size());
+            body.writeTo(response.getOutputStream());
+            return null;
+        } finally {
+            body.release();
+        }
+    }
+
+    @GetMapping(
+        path = "/async",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.TEXT_HTML_VALUE}
+    )
+    public CompletableFuture<ResponseEntity<String>> callUrlAsync(@RequestParam("proxy-url") String proxyUrl) {
+        return asyncProxyService.callUrl(proxyUrl).thenApply(ResponseEntity::ok);
+    }
+
+    @GetMapping(path = "/stream")
+    public void streamUrl(@RequestParam("proxy-url") String proxyUrl,
+                          @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                          HttpServletResponse response) {
+        proxyService.streamUrl(proxyUrl, acceptEncoding, (status, headers) -> {
+            response.setStatus(status.value());
+            // Sent ahead of the body, so the body transfer is not part of it
+            String serverTiming = RequestTiming.current().serverTiming();
+            if (serverTiming != null) {
+                response.setHeader(RequestTiming.SERVER_TIMING_HEADER, serverTiming);
+            }
+            if (headers.getContentType() != null) {
+                response.setContentType(headers.getContentType().toString());
+            }
+            // The body is passed through as encoded upstream, the container does not compress it again
+            String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (contentEncoding != null) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            }
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (headers.getContentLength() >= 0) {
+                response.setContentLengthLong(headers.getContentLength());
+            }
+            return response.getOutputStream();
+        });
+    }
+
+    @PostMapping(
+        path = "/batch",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    public ResponseEntity<ResponseBodyEmitter> callUrls(@RequestBody List<String> proxyUrls) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        batchProxyService.callUrls(proxyUrls, result -> send(emitter, result))
+                         .whenComplete((ignored, error) -> {
+                             if (error == null) {
+                                 emitter.complete();
+                             } else {
+                                 emitter.completeWithError(error);
+                             }
+                         });
+        return ResponseEntity.ok()
+                             .contentType(MediaType.APPLICATION_NDJSON)
+                             .body(emitter);
+    }
+
+    private static void send(ResponseBodyEmitter emitter, BatchResult result) {
+        try {
+            emitter.send(result, MediaType.APPLICATION_JSON);
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,75 @@
+package com.lt.proxy.application;
+
+import java.time.Duration;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.exception.TooManyRequestsException;
+import com.lt.proxy.resilience.RateLimiter;
+
+/**
+ * Applies the client rate limit to /proxy requests before they reach the services, and reports the
+ * client's quota with the {@code RateLimit-*} response headers. Clients are identified by their API
+ * key header or else by their address, which honours forwarded headers when
+ * {@code server.forward-headers-strategy} is set. Upstream host limits are applied by the services
+ * to each canonical url; a request they turn down gets its client token back.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    static final String LIMIT_HEADER = "RateLimit-Limit";
+    static final String REMAINING_HEADER = "RateLimit-Remaining";
+    static final String RESET_HEADER = "RateLimit-Reset";
+
+    private static final String CLIENT_KEY_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".clientKey";
+
+    private final RateLimiter rateLimiter;
+    private final String apiKeyHeader;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.apiKeyHeader = properties.getApiKeyHeader();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async results are dispatched through the interceptors again: the request was counted already
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        String clientKey = clientKey(request);
+        RateLimiter.Quota quota = rateLimiter.acquire(clientKey);
+        if (!quota.isLimited()) {
+            return true;
+        }
+        response.setHeader(LIMIT_HEADER, Integer.toString(quota.getLimit()));
+        response.setHeader(REMAINING_HEADER, Long.toString(quota.getRemaining()));
+        response.setHeader(RESET_HEADER, Long.toString(quota.getResetSeconds()));
+        if (!quota.isAllowed()) {
+            throw new TooManyRequestsException("Rate limit exceeded, retry in " + quota.getResetSeconds() + "s",
+                                               Duration.ofSeconds(quota.getResetSeconds()));
+        }
+        request.setAttribute(CLIENT_KEY_ATTRIBUTE, clientKey);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // Past the client limit, only an upstream host limit answers 429 (upstream 429s are answered 400)
+        Object clientKey = request.getAttribute(CLIENT_KEY_ATTRIBUTE);
+        if (clientKey != null && response.getStatus() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            request.removeAttribute(CLIENT_KEY_ATTRIBUTE);
+            rateLimiter.refund((String) clientKey);
+        }
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(apiKeyHeader);
+        return StringUtils.hasText(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,45 @@
+package com.lt.proxy.application;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import com.lt.proxy.config.TimingProperties;
+import com.lt.proxy.timing.RequestTiming;
+import com.lt.proxy.timing.SlowRequestLog;
+
+/**
+ * Times /proxy requests handled on the request thread, from before the services are called until
+ * the response is written, and hands the finished timing to the slow request log. The controller
+ * reports the timing so far with the {@code Server-Timing} response header.
+ */
+@Component
+public class RequestTimingInterceptor implements HandlerInterceptor {
+
+    private final boolean enabled;
+    private final SlowRequestLog slowRequestLog;
+
+    public RequestTimingInterceptor(TimingProperties properties, SlowRequestLog slowRequestLog) {
+        this.enabled = properties.isEnabled();
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (enabled && request.getDispatcherType() != DispatcherType.ASYNC) {
+            RequestTiming.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestTiming timing = RequestTiming.current();
+        if (!timing.isActive()) {
+            return;
+        }
+        timing.stop();
+        slowRequestLog.record(request.getRequestURI(), request.getParameter("proxy-url"), response.getStatus(), timing);
+    }
+}
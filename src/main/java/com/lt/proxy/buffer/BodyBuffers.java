@@ -0,0 +1,172 @@
+package com.lt.proxy.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.BufferProperties;
+
+/**
+ * Reads upstream bodies into pooled heap chunks, under a memory budget shared by every body held
+ * in memory until it is released. A body larger than the spill threshold, or read while the budget
+ * is used up, continues into a temp file so heap usage stays bounded whatever the upstream sends.
+ */
+@Component
+public class BodyBuffers {
+
+    private final int chunkSize;
+    private final long spillThreshold;
+    private final long memoryBudget;
+    private final Path tempDirectory;
+    private final ArrayBlockingQueue<byte[]> pool;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicInteger spilledInUse = new AtomicInteger();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spilledBytes = new LongAdder();
+
+    public BodyBuffers(BufferProperties properties) {
+        this.chunkSize = (int) properties.getChunkSize().toBytes();
+        this.spillThreshold = properties.getSpillThreshold().toBytes();
+        this.memoryBudget = properties.getMemoryBudget().toBytes();
+        this.tempDirectory = properties.getTempDirectory();
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, properties.getPoolSize()));
+    }
+
+    /**
+     * Reads the whole body, decoding it with the given charset when it stays in memory. A body kept
+     * in memory holds its share of the budget until {@link ProxyBody#release() released}.
+     */
+    public ProxyBody read(InputStream in, MediaType contentType, Charset charset) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        long size = 0;
+        boolean inMemory = false;
+        try {
+            while (true) {
+                if (size + chunkSize > spillThreshold || !reserve()) {
+                    // A body ending exactly on a chunk boundary is complete, there is nothing to spill
+                    int next = in.read();
+                    if (next < 0) {
+                        inMemory = true;
+                        return inMemory(chunks, size, charset);
+                    }
+                    PushbackInputStream rest = new PushbackInputStream(in, 1);
+                    rest.unread(next);
+                    return spill(chunks, size, rest, contentType);
+                }
+                byte[] chunk = acquire();
+                chunks.add(chunk);
+                int read = in.readNBytes(chunk, 0, chunkSize);
+                size += read;
+                if (read < chunkSize) {
+                    inMemory = true;
+                    return inMemory(chunks, size, charset);
+                }
+            }
+        } finally {
+            chunks.forEach(pool::offer);
+            if (!inMemory) {
+                reservedBytes.addAndGet(-(long) chunks.size() * chunkSize);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("memoryBudgetBytes", memoryBudget);
+        map.put("reservedBytes", reservedBytes.get());
+        map.put("pooledChunks", pool.size());
+        map.put("spilledInUse", spilledInUse.get());
+        map.put("spilled", spilled.sum());
+        map.put("spilledBytes", spilledBytes.sum());
+        return map;
+    }
+
+    private ProxyBody spill(List<byte[]> chunks, long size, InputStream in, MediaType contentType) throws IOException {
+        Path path = Files.createTempFile(tempDirectory, "proxy-body-", ".tmp");
+        FileChannel file = FileChannel.open(
+            path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE
+        );
+        try {
+            long remaining = size;
+            for (byte[] chunk : chunks) {
+                int length = (int) Math.min(chunk.length, remaining);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+                remaining -= length;
+            }
+            ReadableByteChannel source = Channels.newChannel(in);
+            long position = size;
+            long transferred;
+            while ((transferred = file.transferFrom(source, position, chunkSize)) > 0) {
+                position += transferred;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        spilled.increment();
+        spilledBytes.add(file.size());
+        spilledInUse.incrementAndGet();
+        return ProxyBody.spilled(file, contentType, spilledInUse::decrementAndGet);
+    }
+
+    /**
+     * The decoded body, carrying the reservation of the chunks it was read into.
+     */
+    private ProxyBody inMemory(List<byte[]> chunks, long size, Charset charset) {
+        long reserved = (long) chunks.size() * chunkSize;
+        return ProxyBody.of(decode(chunks, size, charset), size, () -> reservedBytes.addAndGet(-reserved));
+    }
+
+    private static String decode(List<byte[]> chunks, long size, Charset charset) {
+        if (chunks.isEmpty()) {
+            return "";
+        }
+        if (chunks.size() == 1) {
+            return new String(chunks.get(0), 0, (int) size, charset);
+        }
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            int length = Math.min(chunk.length, bytes.length - offset);
+            System.arraycopy(chunk, 0, bytes, offset, length);
+            offset += length;
+        }
+        return new String(bytes, charset);
+    }
+
+    private boolean reserve() {
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + chunkSize > memoryBudget) {
+                return false;
+            }
+        } while (!reservedBytes.compareAndSet(current, current + chunkSize));
+        return true;
+    }
+
+    private byte[] acquire() {
+        byte[] chunk = pool.poll();
+        return chunk != null ? chunk : new byte[chunkSize];
+    }
+}
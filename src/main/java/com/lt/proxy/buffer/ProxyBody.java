@@ -0,0 +1,149 @@
+package com.lt.proxy.buffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.http.MediaType;
+
+/**
+ * Upstream body of a buffered /proxy call: decoded text when it was small enough to be held in
+ * memory, otherwise the raw bytes spilled to a temp file.
+ *
+ * <p>A body read from the upstream may be shared by coalesced requests and is reference counted:
+ * every user other than the one that read it {@link #retain() retains} it first, and every user
+ * {@link #release() releases} it once written. The last release deletes the temp file of a spilled
+ * body and hands the memory budget of a text body back.
+ */
+public final class ProxyBody {
+
+    private final String text;
+    private final FileChannel file;
+    private final long size;
+    private final MediaType contentType;
+    private final Runnable onRelease;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private ProxyBody(String text, FileChannel file, long size, MediaType contentType, Runnable onRelease) {
+        this.text = text;
+        this.file = file;
+        this.size = size;
+        this.contentType = contentType;
+        this.onRelease = onRelease;
+    }
+
+    public static ProxyBody of(String text) {
+        return new ProxyBody(text, null, utf8Length(text), null, null);
+    }
+
+    static ProxyBody of(String text, long size, Runnable onRelease) {
+        return new ProxyBody(text, null, size, null, onRelease);
+    }
+
+    static ProxyBody spilled(FileChannel file, MediaType contentType, Runnable onRelease) throws IOException {
+        return new ProxyBody(null, file, file.size(), contentType, onRelease);
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * The body text, {@code null} for a spilled body.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Bytes of the body: as received from the upstream, or UTF-8 encoded for a text built in memory.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Upstream content type of a spilled body, served as is together with its raw bytes.
+     */
+    public MediaType getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Writes the body, straight from the temp file when spilled. Positional transfers let several
+     * coalesced requests write the same file concurrently.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (file == null) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = 0;
+        while (position < size) {
+            position += file.transferTo(position, size - position, target);
+        }
+        out.flush();
+    }
+
+    /**
+     * Takes a reference on a shared body, failing when the last one was already released.
+     */
+    public boolean retain() {
+        if (onRelease == null) {
+            return true;
+        }
+        int current;
+        do {
+            current = references.get();
+            if (current <= 0) {
+                // Released text stays readable, it is just no longer counted against the budget
+                return file == null;
+            }
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        if (onRelease == null || references.decrementAndGet() != 0) {
+            return;
+        }
+        if (file == null) {
+            onRelease.run();
+            return;
+        }
+        try {
+            // Opened with DELETE_ON_CLOSE
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            onRelease.run();
+        }
+    }
+
+    /**
+     * Number of bytes the text takes once UTF-8 encoded, without encoding it.
+     */
+    public static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,55 @@
+package com.lt.proxy.buffer;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import com.lt.proxy.timing.RequestTiming;
+
+/**
+ * Lets the upstream {@code RestTemplate} read bodies as {@link ProxyBody} through {@link BodyBuffers}.
+ * Read-only: bodies are written to clients by the controller.
+ */
+public class ProxyBodyHttpMessageConverter extends AbstractHttpMessageConverter<ProxyBody> {
+
+    // Same default as StringHttpMessageConverter, so text bodies decode as they used to
+    private static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+    private final BodyBuffers bodyBuffers;
+
+    public ProxyBodyHttpMessageConverter(BodyBuffers bodyBuffers) {
+        super(MediaType.ALL);
+        this.bodyBuffers = bodyBuffers;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ProxyBody.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ProxyBody readInternal(Class<? extends ProxyBody> clazz, HttpInputMessage inputMessage) throws IOException {
+        MediaType contentType = inputMessage.getHeaders().getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : DEFAULT_CHARSET;
+        long start = System.nanoTime();
+        try {
+            return bodyBuffers.read(inputMessage.getBody(), contentType, charset);
+        } finally {
+            RequestTiming.record(RequestTiming.Phase.BODY, start);
+        }
+    }
+
+    @Override
+    protected void writeInternal(ProxyBody body, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("ProxyBody is not written through message converters");
+    }
+}
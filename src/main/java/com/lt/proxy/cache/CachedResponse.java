@@ -0,0 +1,193 @@
+package com.lt.proxy.cache;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+public final class CachedResponse {
+
+    private static final int HEADER_OVERHEAD_BYTES = 64;
+
+    private final String body;
+    private final HttpHeaders headers;
+    private final long freshUntilMillis;
+    private final boolean revalidatable;
+
+    private CachedResponse(String body, HttpHeaders headers, long freshUntilMillis) {
+        this.body = body;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.freshUntilMillis = freshUntilMillis;
+        this.revalidatable = headers.getETag() != null || headers.getFirst(HttpHeaders.LAST_MODIFIED) != null;
+    }
+
+    /**
+     * Builds the entry a shared cache may store for the given upstream response, or returns
+     * {@code null} when the response is not cacheable (non-200, no-store, private, Vary: * or
+     * neither an explicit lifetime nor a validator to revalidate with).
+     */
+    static CachedResponse of(HttpStatus status, HttpHeaders headers, String body, long nowMillis) {
+        if (status != HttpStatus.OK || body == null) {
+            return null;
+        }
+        String cacheControl = join(headers.get(HttpHeaders.CACHE_CONTROL));
+        if (hasDirective(cacheControl, "no-store")
+            || hasDirective(cacheControl, "private")
+            || headers.getVary().contains("*")) {
+            return null;
+        }
+
+        long lifetimeMillis = lifetimeMillis(cacheControl, headers, nowMillis);
+        boolean hasValidator = headers.getETag() != null || headers.getFirst(HttpHeaders.LAST_MODIFIED) != null;
+        if (lifetimeMillis <= 0 && !hasValidator) {
+            return null;
+        }
+        long ageMillis = Math.max(0, longValue(headers.getFirst(HttpHeaders.AGE), 0) * 1000);
+        long freshUntil = hasDirective(cacheControl, "no-cache")
+            ? nowMillis
+            : nowMillis - ageMillis + Math.max(0, lifetimeMillis);
+        return new CachedResponse(body, headers, freshUntil);
+    }
+
+    /**
+     * Rebuilds an entry read back from the {@link DiskCache}.
+     */
+    static CachedResponse restore(String body, HttpHeaders headers, long freshUntilMillis) {
+        return new CachedResponse(body, headers, freshUntilMillis);
+    }
+
+    /**
+     * Applies the headers of a 304 revalidation to this entry, recomputing its freshness.
+     */
+    CachedResponse revalidated(HttpHeaders notModifiedHeaders, long nowMillis) {
+        HttpHeaders merged = new HttpHeaders();
+        merged.putAll(headers);
+        notModifiedHeaders.forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                merged.put(name, values);
+            }
+        });
+        CachedResponse refreshed = of(HttpStatus.OK, merged, body, nowMillis);
+        return refreshed != null ? refreshed : new CachedResponse(body, merged, nowMillis);
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public boolean isFresh(long nowMillis) {
+        return nowMillis < freshUntilMillis;
+    }
+
+    public boolean isRevalidatable() {
+        return revalidatable;
+    }
+
+    long getFreshUntilMillis() {
+        return freshUntilMillis;
+    }
+
+    HttpHeaders conditionalHeaders() {
+        HttpHeaders conditional = new HttpHeaders();
+        if (headers.getETag() != null) {
+            conditional.setIfNoneMatch(headers.getETag());
+        }
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            conditional.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        return conditional;
+    }
+
+    int weight() {
+        long bytes = body.length();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            bytes += header.getKey().length() + HEADER_OVERHEAD_BYTES;
+            for (String value : header.getValue()) {
+                bytes += value.length();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long lifetimeMillis(String cacheControl, HttpHeaders headers, long nowMillis) {
+        long sharedMaxAge = directiveSeconds(cacheControl, "s-maxage");
+        if (sharedMaxAge >= 0) {
+            return sharedMaxAge * 1000;
+        }
+        long maxAge = directiveSeconds(cacheControl, "max-age");
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+        if (headers.containsKey(HttpHeaders.EXPIRES)) {
+            long expires = safeDate(headers, HttpHeaders.EXPIRES);
+            long date = safeDate(headers, HttpHeaders.DATE);
+            return expires - (date > 0 ? date : nowMillis);
+        }
+        return -1;
+    }
+
+    private static long safeDate(HttpHeaders headers, String name) {
+        try {
+            return headers.getFirstDate(name);
+        } catch (IllegalArgumentException e) {
+            // An invalid Expires value means "already expired"
+            return 0;
+        }
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        return directiveIndex(cacheControl, directive) >= 0;
+    }
+
+    private static long directiveSeconds(String cacheControl, String directive) {
+        int index = directiveIndex(cacheControl, directive);
+        if (index < 0 || index + directive.length() >= cacheControl.length()
+            || cacheControl.charAt(index + directive.length()) != '=') {
+            return -1;
+        }
+        int start = index + directive.length() + 1;
+        int end = start;
+        while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) {
+            end++;
+        }
+        return longValue(cacheControl.substring(start, end), -1);
+    }
+
+    private static int directiveIndex(String cacheControl, String directive) {
+        int from = 0;
+        while (true) {
+            int index = cacheControl.indexOf(directive, from);
+            if (index < 0) {
+                return -1;
+            }
+            int end = index + directive.length();
+            boolean startsToken = index == 0 || cacheControl.charAt(index - 1) == ',' || cacheControl.charAt(index - 1) == ' ';
+            boolean endsToken = end == cacheControl.length() || cacheControl.charAt(end) == ',' || cacheControl.charAt(end) == '=';
+            if (startsToken && endsToken) {
+                return index;
+            }
+            from = end;
+        }
+    }
+
+    private static String join(List<String> values) {
+        return values == null ? "" : String.join(",", values).toLowerCase(Locale.ROOT);
+    }
+
+    private static long longValue(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package com.lt.proxy.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.DiskCacheProperties;
+
+/**
+ * Second, persistent tier of the {@link ResponseCache}: entries are appended to memory-mapped segment
+ * files and located through an in-memory {@link LocationIndex} of URL hash to segment and offset,
+ * rebuilt by scanning the segments at startup so a restarted proxy comes back warm.
+ *
+ * <p>Once the segment files exceed {@code proxy.cache.disk.max-size} the oldest segment is dropped,
+ * and sealed segments mostly made of overwritten or expired entries are compacted by copying their
+ * live entries to the active segment. Both run on a background thread, and a removed segment is
+ * unmapped once no lookup reads it anymore, rather than whenever its buffer is garbage collected.
+ */
+@Component
+public class DiskCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskCache.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+    private static final int MAGIC = 0x50434431;
+    private static final int FLAG_REVALIDATABLE = 1;
+    private static final int FLAG_TOMBSTONE = 2;
+    // magic, record length, key hash, fresh until, flags, key / headers / body lengths
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int CRC_BYTES = 4;
+    private static final MethodHandle UNMAP = unmapper();
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxSize;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final Clock clock;
+    private final LocationIndex index = new LocationIndex();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ExecutorService maintenance;
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final Object maintenanceLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // Guarded by this, like every append
+    private Segment active;
+
+    @Autowired
+    public DiskCache(DiskCacheProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    DiskCache(DiskCacheProperties properties, Clock clock) {
+        this.enabled = properties.isEnabled();
+        this.directory = properties.getDirectory();
+        this.maxSize = properties.getMaxSize().toBytes();
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, properties.getSegmentSize().toBytes());
+        this.compactionThreshold = properties.getCompactionThreshold();
+        this.clock = clock;
+        this.maintenance = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "disk-cache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the index from them, later records of a URL replacing
+     * earlier ones. Scanning a segment stops at its first torn or corrupt record.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                        .sorted((a, b) -> Integer.compare(segmentId(a), segmentId(b)))
+                        .collect(Collectors.toList());
+        }
+        long now = clock.millis();
+        for (Path file : files) {
+            Segment segment = Segment.map(file, segmentId(file), segmentSize);
+            segments.put(segment.id, segment);
+            segment.writePosition = segment.scan(offset -> {
+                if (segment.isTombstone(offset)) {
+                    long previous = index.remove(segment.hash(offset));
+                    if (previous != LocationIndex.MISSING) {
+                        release(previous);
+                    }
+                } else if (segment.isFresh(offset, now) || segment.isRevalidatable(offset)) {
+                    index(segment.hash(offset), location(segment.id, offset), segment.length(offset));
+                }
+            });
+        }
+        active = segments.isEmpty() ? createSegment(0) : segments.lastEntry().getValue();
+        LOGGER.info("Disk cache loaded {} entries from {} segments in {}", index.size(), segments.size(), directory);
+        scheduleMaintenance();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        maintenance.shutdownNow();
+        for (Segment segment : segments.values()) {
+            if (segment.acquire()) {
+                try {
+                    segment.buffer.force();
+                } finally {
+                    segment.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the stored entry for the URL when it is fresh or can still be revalidated, or {@code null}.
+     */
+    public CachedResponse lookup(String url) {
+        if (!enabled) {
+            return null;
+        }
+        long hash = hash(url);
+        long location = index.get(hash);
+        Segment segment = location == LocationIndex.MISSING ? null : segments.get(segmentId(location));
+        if (segment == null || !segment.acquire()) {
+            // Missing, or its segment was just dropped or compacted away
+            misses.increment();
+            return null;
+        }
+        int offset = offset(location);
+        try {
+            if (!segment.isFresh(offset, clock.millis()) && !segment.isRevalidatable(offset)) {
+                if (index.remove(hash, location)) {
+                    segment.liveBytes.addAndGet(-segment.length(offset));
+                }
+                misses.increment();
+                return null;
+            }
+            CachedResponse response = segment.read(offset, url);
+            if (response == null) {
+                // Another URL with the same hash
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return response;
+        } catch (RuntimeException e) {
+            errors.increment();
+            misses.increment();
+            LOGGER.warn("Unreadable disk cache record in segment {} at offset {}: {}", segment.id, offset, e.toString());
+            return null;
+        } finally {
+            segment.release();
+        }
+    }
+
+    public void store(String url, CachedResponse response) {
+        if (!enabled) {
+            return;
+        }
+        byte[] key = url.getBytes(StandardCharsets.UTF_8);
+        byte[] headers = encode(response.getHeaders());
+        byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        int flags = response.isRevalidatable() ? FLAG_REVALIDATABLE : 0;
+        append(url, response.getFreshUntilMillis(), flags, key, headers, body);
+    }
+
+    /**
+     * Forgets the URL's entry. A tombstone record keeps it forgotten across restarts, and is carried
+     * over by compaction for as long as an older segment may still hold the entry.
+     */
+    public void invalidate(String url) {
+        if (!enabled || !index.containsKey(hash(url))) {
+            return;
+        }
+        append(url, 0, FLAG_TOMBSTONE, url.getBytes(StandardCharsets.UTF_8), new byte[0], new byte[0]);
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        long diskBytes = 0;
+        long usedBytes = 0;
+        long liveBytes = 0;
+        for (Segment segment : segments.values()) {
+            diskBytes += segment.buffer.capacity();
+            usedBytes += segment.writePosition;
+            liveBytes += segment.liveBytes.get();
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("entries", index.size());
+        map.put("segments", segments.size());
+        map.put("diskBytes", diskBytes);
+        map.put("usedBytes", usedBytes);
+        map.put("liveBytes", liveBytes);
+        map.put("hits", hitCount);
+        map.put("misses", misses.sum());
+        map.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        map.put("writes", writes.sum());
+        map.put("evictions", evictions.sum());
+        map.put("compactions", compactions.sum());
+        map.put("errors", errors.sum());
+        return map;
+    }
+
+    /**
+     * Drops the oldest segments while the files exceed the size bound, then compacts sparse sealed
+     * segments. Runs on the maintenance thread.
+     */
+    void maintain() {
+        maintenanceScheduled.set(false);
+        synchronized (maintenanceLock) {
+            try {
+                while (diskBytes() > maxSize && segments.size() > 1) {
+                    drop(segments.firstEntry().getValue());
+                }
+                for (Segment segment : List.copyOf(segments.values())) {
+                    if (segment != activeSegment() && segment.liveBytes.get() < segment.writePosition * compactionThreshold) {
+                        compact(segment);
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                errors.increment();
+                LOGGER.warn("Disk cache maintenance failed in {}: {}", directory, e.toString());
+            }
+        }
+    }
+
+    private void drop(Segment segment) throws IOException {
+        segment.scan(offset -> {
+            if (index.remove(segment.hash(offset), location(segment.id, offset))) {
+                evictions.increment();
+            }
+        });
+        segments.remove(segment.id);
+        Files.deleteIfExists(segment.path);
+        segment.retire();
+    }
+
+    private void compact(Segment segment) throws IOException {
+        long now = clock.millis();
+        List<Integer> live = new ArrayList<>();
+        List<Integer> tombstones = new ArrayList<>();
+        segment.scan(offset -> {
+            if (segment.isTombstone(offset)) {
+                tombstones.add(offset);
+            } else if (location(segment.id, offset) == index.get(segment.hash(offset))) {
+                live.add(offset);
+            }
+        });
+        for (int offset : live) {
+            long hash = segment.hash(offset);
+            long location = location(segment.id, offset);
+            int length = segment.length(offset);
+            if (!segment.isFresh(offset, now) && !segment.isRevalidatable(offset)) {
+                index.remove(hash, location);
+                continue;
+            }
+            synchronized (this) {
+                // A newer record for the URL may have been written since the scan
+                if (index.get(hash) != location) {
+                    continue;
+                }
+                Segment target = segmentWithRoom(length);
+                int copied = target.copy(segment, offset, length);
+                index.put(hash, location(target.id, copied));
+                target.liveBytes.addAndGet(length);
+            }
+        }
+        for (int offset : tombstones) {
+            synchronized (this) {
+                // Needed while an older segment may hold the entry, unless the URL was stored again since
+                if (segments.firstKey() < segment.id && !index.containsKey(segment.hash(offset))) {
+                    int length = segment.length(offset);
+                    segmentWithRoom(length).copy(segment, offset, length);
+                }
+            }
+        }
+        segments.remove(segment.id);
+        Files.deleteIfExists(segment.path);
+        segment.retire();
+        compactions.increment();
+    }
+
+    private void append(String url, long freshUntilMillis, int flags, byte[] key, byte[] headers, byte[] body) {
+        long length = (long) RECORD_HEADER_BYTES + key.length + headers.length + body.length + CRC_BYTES;
+        if (length > segmentSize) {
+            invalidate(url);
+            return;
+        }
+        long hash = hash(url);
+        try {
+            synchronized (this) {
+                Segment segment = segmentWithRoom((int) length);
+                int offset = segment.append(hash, freshUntilMillis, flags, key, headers, body);
+                if ((flags & FLAG_TOMBSTONE) != 0) {
+                    long previous = index.remove(hash);
+                    if (previous != LocationIndex.MISSING) {
+                        release(previous);
+                    }
+                } else {
+                    index(hash, location(segment.id, offset), (int) length);
+                }
+            }
+            writes.increment();
+        } catch (IOException | UncheckedIOException e) {
+            errors.increment();
+            LOGGER.warn("Could not write to the disk cache in {}: {}", directory, e.toString());
+        }
+    }
+
+    private Segment segmentWithRoom(int length) throws IOException {
+        if (active.buffer.capacity() - active.writePosition < length) {
+            Segment sealed = active;
+            active = createSegment(active.id + 1);
+            // Flushing up to a whole segment is left to the maintenance thread, out of the lock
+            execute(() -> force(sealed));
+            scheduleMaintenance();
+        }
+        return active;
+    }
+
+    private void force(Segment segment) {
+        if (segment.acquire()) {
+            try {
+                segment.buffer.force();
+            } catch (UncheckedIOException e) {
+                errors.increment();
+                LOGGER.warn("Could not flush disk cache segment {}: {}", segment.id, e.toString());
+            } finally {
+                segment.release();
+            }
+        }
+    }
+
+    private synchronized Segment activeSegment() {
+        return active;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = Segment.map(directory.resolve("segment-" + id + ".dat"), id, segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled.compareAndSet(false, true)) {
+            execute(this::maintain);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            maintenance.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed: every segment was flushed on the way
+        }
+    }
+
+    private void index(long hash, long location, int length) {
+        segments.get(segmentId(location)).liveBytes.addAndGet(length);
+        long previous = index.put(hash, location);
+        if (previous != LocationIndex.MISSING) {
+            release(previous);
+        }
+    }
+
+    private void release(long location) {
+        Segment segment = segments.get(segmentId(location));
+        if (segment != null && segment.acquire()) {
+            try {
+                segment.liveBytes.addAndGet(-segment.length(offset(location)));
+            } finally {
+                segment.release();
+            }
+        }
+    }
+
+    private long diskBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.buffer.capacity()).sum();
+    }
+
+    private static byte[] encode(HttpHeaders headers) {
+        StringBuilder builder = new StringBuilder();
+        headers.forEach((name, values) -> values.forEach(value -> builder.append(name).append(": ").append(value).append('\n')));
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static HttpHeaders decode(String encoded) {
+        HttpHeaders headers = new HttpHeaders();
+        int start = 0;
+        while (start < encoded.length()) {
+            int end = encoded.indexOf('\n', start);
+            int separator = encoded.indexOf(": ", start);
+            headers.add(encoded.substring(start, separator), encoded.substring(separator + 2, end));
+            start = end + 1;
+        }
+        return headers;
+    }
+
+    // 64-bit FNV-1a over the URL's chars, so lookups need no encoding
+    static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xffffffffL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static int segmentId(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Unmaps a buffer through {@code Unsafe.invokeCleaner}, or {@code null} when the runtime does
+     * not offer it and unmapping is left to the garbage collector.
+     */
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                                .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Mapped disk cache segments cannot be unmapped explicitly: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * One segment file, mapped whole. Records are only appended, under the cache's lock, and are
+     * published to readers through the index, so reads need no locking. Readers that may race the
+     * segment's removal {@link #acquire() acquire} it first: the mapping is released with the last
+     * of them once the segment is {@link #retire() retired}, as touching it afterwards would crash
+     * the JVM.
+     */
+    private static final class Segment {
+
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        // The cache's own reference plus one per reader
+        private final AtomicInteger users = new AtomicInteger(1);
+        private volatile int writePosition;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path path, int id, int segmentSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = Math.max(channel.size(), segmentSize);
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        boolean acquire() {
+            int current;
+            do {
+                current = users.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!users.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0 && UNMAP != null) {
+                try {
+                    UNMAP.invokeExact((ByteBuffer) buffer);
+                } catch (Throwable e) {
+                    LOGGER.warn("Could not unmap disk cache segment {}: {}", id, e.toString());
+                }
+            }
+        }
+
+        /**
+         * Drops the cache's own reference once the segment is out of the segment map.
+         */
+        void retire() {
+            release();
+        }
+
+        /**
+         * Visits the offset of every valid record and returns the end of the last one.
+         */
+        int scan(OffsetConsumer consumer) {
+            int offset = 0;
+            while (offset + RECORD_HEADER_BYTES + CRC_BYTES <= buffer.capacity() && buffer.getInt(offset) == MAGIC) {
+                int length = length(offset);
+                if (length < RECORD_HEADER_BYTES + CRC_BYTES || length > buffer.capacity() - offset
+                    || buffer.getInt(offset + length - CRC_BYTES) != crc(offset, length)) {
+                    break;
+                }
+                consumer.accept(offset);
+                offset += length;
+            }
+            return offset;
+        }
+
+        int append(long hash, long freshUntilMillis, int flags, byte[] key, byte[] headers, byte[] body) {
+            int offset = writePosition;
+            int length = RECORD_HEADER_BYTES + key.length + headers.length + body.length + CRC_BYTES;
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4);
+            view.putInt(length)
+                .putLong(hash)
+                .putLong(freshUntilMillis)
+                .putInt(flags)
+                .putInt(key.length)
+                .putInt(headers.length)
+                .putInt(body.length)
+                .put(key)
+                .put(headers)
+                .put(body);
+            view.putInt(crc(offset, length));
+            // The magic goes last so a scan never trusts a half-written record
+            buffer.putInt(offset, MAGIC);
+            writePosition = offset + length;
+            return offset;
+        }
+
+        int copy(Segment source, int sourceOffset, int length) {
+            int offset = writePosition;
+            ByteBuffer record = source.buffer.duplicate();
+            record.position(sourceOffset).limit(sourceOffset + length);
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.put(record);
+            writePosition = offset + length;
+            return offset;
+        }
+
+        /**
+         * Decodes the record at the offset, or returns {@code null} when it belongs to another URL.
+         */
+        CachedResponse read(int offset, String url) {
+            int keyLength = buffer.getInt(offset + 28);
+            int headersLength = buffer.getInt(offset + 32);
+            int bodyLength = buffer.getInt(offset + 36);
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + RECORD_HEADER_BYTES);
+            if (!url.equals(string(view, keyLength))) {
+                return null;
+            }
+            HttpHeaders headers = decode(string(view, headersLength));
+            return CachedResponse.restore(string(view, bodyLength), headers, buffer.getLong(offset + 16));
+        }
+
+        int length(int offset) {
+            return buffer.getInt(offset + 4);
+        }
+
+        long hash(int offset) {
+            return buffer.getLong(offset + 8);
+        }
+
+        boolean isFresh(int offset, long nowMillis) {
+            return nowMillis < buffer.getLong(offset + 16);
+        }
+
+        boolean isRevalidatable(int offset) {
+            return (buffer.getInt(offset + 24) & FLAG_REVALIDATABLE) != 0;
+        }
+
+        boolean isTombstone(int offset) {
+            return (buffer.getInt(offset + 24) & FLAG_TOMBSTONE) != 0;
+        }
+
+        // Covers everything between the magic and the checksum itself
+        private int crc(int offset, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4).limit(offset + length - CRC_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(view);
+            return (int) crc.getValue();
+        }
+
+        private static String string(ByteBuffer view, int length) {
+            byte[] bytes = new byte[length];
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    @FunctionalInterface
+    private interface OffsetConsumer {
+
+        void accept(int offset);
+    }
+}
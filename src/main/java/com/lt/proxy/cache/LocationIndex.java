@@ -0,0 +1,186 @@
+package com.lt.proxy.cache;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing map of URL hash to record location for the {@link DiskCache}, both plain
+ * {@code long}s stored side by side in one array: no boxing and no node per entry, so the index of
+ * millions of entries costs tens of bytes each. Locations are never negative, {@code -1} marks an
+ * empty slot and a missing key.
+ *
+ * <p>Lookups are optimistic reads that only retry under the read lock when a write raced them;
+ * writes take the write lock. Removal shifts the following entries of the probe sequence back, so
+ * the table never fills up with deleted markers.
+ */
+final class LocationIndex {
+
+    static final long MISSING = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.6;
+
+    private final StampedLock lock = new StampedLock();
+    // Key at 2 * slot, location at 2 * slot + 1
+    private long[] table = emptyTable(INITIAL_CAPACITY);
+    private int size;
+
+    long get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        long location = find(table, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                location = find(table, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return location;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Maps the key to the location, returning the previous location or {@link #MISSING}.
+     */
+    long put(long key, long location) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slot(table, key);
+            long previous = table[2 * slot + 1];
+            if (previous == MISSING) {
+                if (size + 1 > capacity(table) * MAX_LOAD) {
+                    table = resize(table);
+                    slot = slot(table, key);
+                }
+                table[2 * slot] = key;
+                size++;
+            }
+            table[2 * slot + 1] = location;
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key, returning its location or {@link #MISSING}.
+     */
+    long remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slot(table, key);
+            long previous = table[2 * slot + 1];
+            if (previous != MISSING) {
+                delete(slot);
+            }
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key only while it still maps to the location.
+     */
+    boolean remove(long key, long location) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slot(table, key);
+            if (table[2 * slot + 1] != location || location == MISSING) {
+                return false;
+            }
+            delete(slot);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void delete(int slot) {
+        int mask = capacity(table) - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; table[2 * i + 1] != MISSING; i = (i + 1) & mask) {
+            int home = home(table[2 * i], mask);
+            // The entry may fill the hole when the hole lies between its home slot and where it is
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[2 * hole] = table[2 * i];
+                table[2 * hole + 1] = table[2 * i + 1];
+                hole = i;
+            }
+        }
+        table[2 * hole + 1] = MISSING;
+        size--;
+    }
+
+    /**
+     * Location of the key, or {@link #MISSING}. Bounded by the capacity so that a read racing a
+     * write, to be discarded anyway, always ends.
+     */
+    private static long find(long[] table, long key) {
+        int capacity = capacity(table);
+        int mask = capacity - 1;
+        int slot = home(key, mask);
+        for (int probes = 0; probes < capacity; probes++, slot = (slot + 1) & mask) {
+            long location = table[2 * slot + 1];
+            if (location == MISSING || table[2 * slot] == key) {
+                return location;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Slot holding the key, or the empty slot ending its probe sequence.
+     */
+    private static int slot(long[] table, long key) {
+        int mask = capacity(table) - 1;
+        int slot = home(key, mask);
+        while (table[2 * slot + 1] != MISSING && table[2 * slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long[] resize(long[] table) {
+        long[] resized = emptyTable(capacity(table) * 2);
+        for (int i = 0; i < capacity(table); i++) {
+            long location = table[2 * i + 1];
+            if (location != MISSING) {
+                int slot = slot(resized, table[2 * i]);
+                resized[2 * slot] = table[2 * i];
+                resized[2 * slot + 1] = location;
+            }
+        }
+        return resized;
+    }
+
+    private static int home(long key, int mask) {
+        // The keys are FNV hashes already: fold and spread the high bits over the slot bits
+        int spread = (int) (key ^ (key >>> 32)) * 0x9e3779b9;
+        return (spread ^ (spread >>> 16)) & mask;
+    }
+
+    private static int capacity(long[] table) {
+        return table.length / 2;
+    }
+
+    private static long[] emptyTable(int capacity) {
+        long[] table = new long[2 * capacity];
+        for (int i = 1; i < table.length; i += 2) {
+            table[i] = MISSING;
+        }
+        return table;
+    }
+}
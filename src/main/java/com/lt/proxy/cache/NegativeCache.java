@@ -0,0 +1,81 @@
+package com.lt.proxy.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ResourceNotFoundException;
+
+/**
+ * Short-lived memory of urls the upstream answered with 404 or 410, so repeated requests for dead
+ * urls are answered with the same (stackless) error without going upstream. Only the status and
+ * message are kept: the original error's cause holds the whole upstream error page.
+ */
+@Component
+public class NegativeCache {
+
+    private final boolean enabled;
+    private final Cache<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+
+    public NegativeCache(NegativeCacheProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.entries = Caffeine.newBuilder()
+                               .maximumSize(properties.getMaxEntries())
+                               .expireAfterWrite(properties.getTtl())
+                               .executor(Runnable::run)
+                               .build();
+    }
+
+    /**
+     * The error to answer the url with, or {@code null} when it is not known to be missing.
+     */
+    public RuntimeException lookup(String url) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.getIfPresent(url);
+        if (entry == null) {
+            return null;
+        }
+        hits.increment();
+        return entry.toException();
+    }
+
+    public void store(String url, int upstreamStatus, RuntimeException error) {
+        if (enabled && (upstreamStatus == HttpStatus.NOT_FOUND.value() || upstreamStatus == HttpStatus.GONE.value())) {
+            entries.put(url, new Entry(upstreamStatus, error.getMessage()));
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private static final class Entry {
+
+        private final int status;
+        private final String message;
+
+        private Entry(int status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+        /**
+         * The error the service answers a missing url with, stackless and without the upstream response.
+         */
+        RuntimeException toException() {
+            return status == HttpStatus.NOT_FOUND.value()
+                ? new ResourceNotFoundException(message, null)
+                : new ProxyException(message, null, false);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.lt.proxy.cache;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lt.proxy.config.CacheProperties;
+
+/**
+ * Shared HTTP cache for buffered /proxy responses, bounded by the approximate byte size of the
+ * stored entries and evicted with Caffeine's W-TinyLFU policy. Entries are also written through to
+ * the optional {@link DiskCache}, which answers memory misses and survives restarts.
+ */
+@Component
+public class ResponseCache {
+
+    private final boolean enabled;
+    private final Clock clock;
+    private final Cache<String, CachedResponse> entries;
+    private final DiskCache diskCache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public ResponseCache(CacheProperties properties) {
+        this(properties, null, Clock.systemUTC());
+    }
+
+    @Autowired
+    public ResponseCache(CacheProperties properties, DiskCache diskCache) {
+        this(properties, diskCache, Clock.systemUTC());
+    }
+
+    ResponseCache(CacheProperties properties, Clock clock) {
+        this(properties, null, clock);
+    }
+
+    ResponseCache(CacheProperties properties, DiskCache diskCache, Clock clock) {
+        this.enabled = properties.isEnabled();
+        this.clock = clock;
+        this.diskCache = diskCache;
+        this.entries = Caffeine.newBuilder()
+                               .maximumWeight(properties.getMaxSize().toBytes())
+                               .weigher((String url, CachedResponse response) -> response.weight())
+                               .expireAfter(new FreshnessExpiry(clock))
+                               .recordStats()
+                               .executor(Runnable::run)
+                               .build();
+    }
+
+    /**
+     * Returns the stored entry for the URL, fresh or stale, or {@code null} when nothing is stored.
+     * Only fresh entries count as hits: stale ones still need an upstream (conditional) call.
+     */
+    public CachedResponse lookup(String url) {
+        if (!enabled) {
+            return null;
+        }
+        CachedResponse response = entries.getIfPresent(url);
+        if (response == null && diskCache != null) {
+            response = diskCache.lookup(url);
+            if (response != null) {
+                entries.put(url, response);
+            }
+        }
+        if (response != null && isFresh(response)) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return response;
+    }
+
+    public boolean isFresh(CachedResponse response) {
+        return response.isFresh(clock.millis());
+    }
+
+    public void store(String url, HttpStatus status, HttpHeaders headers, String body) {
+        if (!enabled) {
+            return;
+        }
+        CachedResponse response = CachedResponse.of(status, headers, body, clock.millis());
+        if (response != null) {
+            entries.put(url, response);
+            if (diskCache != null) {
+                diskCache.store(url, response);
+            }
+        } else {
+            entries.invalidate(url);
+            if (diskCache != null) {
+                diskCache.invalidate(url);
+            }
+        }
+    }
+
+    /**
+     * Request headers turning the upstream call for a stale entry into a conditional GET.
+     */
+    public HttpHeaders revalidationHeaders(CachedResponse stale) {
+        revalidations.increment();
+        return stale.conditionalHeaders();
+    }
+
+    /**
+     * Applies a 304 answer to the stale entry, returning the refreshed entry to serve.
+     */
+    public CachedResponse revalidated(String url, CachedResponse stale, HttpHeaders notModifiedHeaders) {
+        notModified.increment();
+        CachedResponse refreshed = stale.revalidated(notModifiedHeaders, clock.millis());
+        entries.put(url, refreshed);
+        if (diskCache != null) {
+            diskCache.store(url, refreshed);
+        }
+        return refreshed;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = entries.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("entries", entries.estimatedSize());
+        map.put("weightBytes", entries.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+        map.put("hits", hits.sum());
+        map.put("misses", misses.sum());
+        map.put("evictions", stats.evictionCount());
+        map.put("revalidations", revalidations.sum());
+        map.put("notModified", notModified.sum());
+        if (diskCache != null) {
+            map.put("disk", diskCache.stats());
+        }
+        return map;
+    }
+
+    private static final class FreshnessExpiry implements Expiry<String, CachedResponse> {
+
+        private final Clock clock;
+
+        private FreshnessExpiry(Clock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public long expireAfterCreate(String url, CachedResponse response, long currentTime) {
+            // Stale entries with a validator are kept so they can be revalidated with a conditional GET
+            if (response.isRevalidatable()) {
+                return Long.MAX_VALUE;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, response.getFreshUntilMillis() - clock.millis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String url, CachedResponse response, long currentTime, long currentDuration) {
+            return expireAfterCreate(url, response, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String url, CachedResponse response, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "proxy.async")
+public class AsyncProperties {
+
+    private int maxInFlight = 10000;
+    private Duration deadline = Duration.ofSeconds(15);
+    /** Largest upstream body read, before and after gzip decoding; larger ones fail the call. */
+    private DataSize maxBodySize = DataSize.ofMegabytes(1);
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+
+    public DataSize getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(DataSize maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+}
@@ -0,0 +1,38 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.batch")
+public class BatchProperties {
+
+    private int maxUrls = 100;
+    /** Upstream calls of one batch in flight at once. */
+    private int concurrency = 16;
+    /** Urls not answered when it elapses are reported as GATEWAY_TIMEOUT and not called anymore. */
+    private Duration deadline = Duration.ofSeconds(15);
+
+    public int getMaxUrls() {
+        return maxUrls;
+    }
+
+    public void setMaxUrls(int maxUrls) {
+        this.maxUrls = maxUrls;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lt.proxy.config;
+
+import java.nio.file.Path;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "proxy.buffer")
+public class BufferProperties {
+
+    private DataSize chunkSize = DataSize.ofKilobytes(16);
+    /** Upstream bodies larger than this are spilled to a temp file instead of being held in memory. */
+    private DataSize spillThreshold = DataSize.ofMegabytes(1);
+    /** Heap shared by all upstream bodies being read at once; once used up, new reads spill right away. */
+    private DataSize memoryBudget = DataSize.ofMegabytes(64);
+    /** Free chunks kept for reuse. */
+    private int poolSize = 256;
+    private Path tempDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    public DataSize getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(DataSize chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public DataSize getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(DataSize spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public DataSize getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(DataSize memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+}
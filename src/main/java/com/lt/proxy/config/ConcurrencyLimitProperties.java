@@ -0,0 +1,102 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+    /** Limits on the upstream calls in flight across all hosts. */
+    private int initialLimit = 100;
+    private int minLimit = 10;
+    private int maxLimit = 1000;
+    /** Limits on the upstream calls in flight to one host. */
+    private int hostInitialLimit = 20;
+    private int hostMinLimit = 2;
+    private int hostMaxLimit = 200;
+    /** Sent as {@code Retry-After} with rejected requests. */
+    private Duration retryAfter = Duration.ofSeconds(1);
+    private int maxHosts = 1000;
+    private Duration idleExpiry = Duration.ofMinutes(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public int getHostInitialLimit() {
+        return hostInitialLimit;
+    }
+
+    public void setHostInitialLimit(int hostInitialLimit) {
+        this.hostInitialLimit = hostInitialLimit;
+    }
+
+    public int getHostMinLimit() {
+        return hostMinLimit;
+    }
+
+    public void setHostMinLimit(int hostMinLimit) {
+        this.hostMinLimit = hostMinLimit;
+    }
+
+    public int getHostMaxLimit() {
+        return hostMaxLimit;
+    }
+
+    public void setHostMaxLimit(int hostMaxLimit) {
+        this.hostMaxLimit = hostMaxLimit;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public int getMaxHosts() {
+        return maxHosts;
+    }
+
+    public void setMaxHosts(int maxHosts) {
+        this.maxHosts = maxHosts;
+    }
+
+    public Duration getIdleExpiry() {
+        return idleExpiry;
+    }
+
+    public void setIdleExpiry(Duration idleExpiry) {
+        this.idleExpiry = idleExpiry;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lt.proxy.config;
+
+import java.nio.file.Path;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "proxy.cache.disk")
+public class DiskCacheProperties {
+
+    private boolean enabled = false;
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "proxy-cache");
+    /** Total size of the segment files; the oldest segment is dropped once it is exceeded. */
+    private DataSize maxSize = DataSize.ofGigabytes(1);
+    /** Size of one memory-mapped segment file, also the largest entry that can be stored. */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    /** Sealed segments whose live entries take less than this share of the segment are compacted. */
+    private double compactionThreshold = 0.5;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public DataSize getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(DataSize segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public void setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+}
@@ -0,0 +1,79 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.dns")
+public class DnsProperties {
+
+    private boolean enabled = true;
+    /**
+     * How long resolved addresses are used. The JDK resolver does not report record TTLs, so this
+     * should not exceed the TTL of the upstream hosts' records.
+     */
+    private Duration ttl = Duration.ofSeconds(60);
+    /** Age after which a resolved host still in use is resolved again in the background. */
+    private Duration refreshAfter = Duration.ofSeconds(45);
+    /** How long a failed resolution is remembered. */
+    private Duration negativeTtl = Duration.ofSeconds(5);
+    /** Longest a connection waits for a resolution before failing. */
+    private Duration timeout = Duration.ofSeconds(5);
+    private int threads = 4;
+    private long maxHosts = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Duration getRefreshAfter() {
+        return refreshAfter;
+    }
+
+    public void setRefreshAfter(Duration refreshAfter) {
+        this.refreshAfter = refreshAfter;
+    }
+
+    public Duration getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    public void setNegativeTtl(Duration negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getMaxHosts() {
+        return maxHosts;
+    }
+
+    public void setMaxHosts(long maxHosts) {
+        this.maxHosts = maxHosts;
+    }
+}
@@ -0,0 +1,28 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.error-logging")
+public class ErrorLoggingProperties {
+
+    /** Errors of one exception type logged per interval, the rest are only counted. */
+    private int maxPerInterval = 10;
+    private Duration interval = Duration.ofSeconds(10);
+
+    public int getMaxPerInterval() {
+        return maxPerInterval;
+    }
+
+    public void setMaxPerInterval(int maxPerInterval) {
+        this.maxPerInterval = maxPerInterval;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+}
@@ -0,0 +1,67 @@
+package com.lt.proxy.config;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.header-logging")
+public class HeaderLoggingProperties {
+
+    private boolean enabled = true;
+    /** Log the headers of 1 in every {@code sampleRate} responses. */
+    private int sampleRate = 1;
+    /** Header names to log, all of them when empty. */
+    private Set<String> include = new LinkedHashSet<>();
+    /** Header names never logged. */
+    private Set<String> exclude = new LinkedHashSet<>();
+    private boolean async = true;
+    private int queueCapacity = 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Set<String> getInclude() {
+        return include;
+    }
+
+    public void setInclude(Set<String> include) {
+        this.include = include;
+    }
+
+    public Set<String> getExclude() {
+        return exclude;
+    }
+
+    public void setExclude(Set<String> exclude) {
+        this.exclude = exclude;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
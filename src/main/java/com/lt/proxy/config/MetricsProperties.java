@@ -0,0 +1,27 @@
+package com.lt.proxy.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.metrics")
+public class MetricsProperties {
+
+    /** Distinct upstream hosts tagged individually, the rest are reported as "other". */
+    private int maxHostTags = 50;
+    private boolean percentileHistogram = true;
+
+    public int getMaxHostTags() {
+        return maxHostTags;
+    }
+
+    public void setMaxHostTags(int maxHostTags) {
+        this.maxHostTags = maxHostTags;
+    }
+
+    public boolean isPercentileHistogram() {
+        return percentileHistogram;
+    }
+
+    public void setPercentileHistogram(boolean percentileHistogram) {
+        this.percentileHistogram = percentileHistogram;
+    }
+}
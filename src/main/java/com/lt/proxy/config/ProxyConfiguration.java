@@ -1,14 +1,167 @@
 package com.lt.proxy.config;
 
+import java.net.http.HttpClient;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.buffer.BodyBuffers;
+import com.lt.proxy.buffer.ProxyBodyHttpMessageConverter;
+import com.lt.proxy.dns.CachingDnsResolver;
+import com.lt.proxy.resilience.Cancellation;
+import com.lt.proxy.timing.TimedPlainSocketFactory;
+import com.lt.proxy.timing.UpstreamTimingInterceptor;
+import com.lt.proxy.upstream.JdkClientHttpRequestFactory;
 
 @Configuration
+@EnableConfigurationProperties({
+    UpstreamClientProperties.class,
+    CacheProperties.class,
+    DiskCacheProperties.class,
+    CoalescingProperties.class,
+    AsyncProperties.class,
+    HeaderLoggingProperties.class,
+    MetricsProperties.class,
+    CircuitBreakerProperties.class,
+    NegativeCacheProperties.class,
+    ErrorLoggingProperties.class,
+    BatchProperties.class,
+    BufferProperties.class,
+    RetryProperties.class,
+    ConcurrencyLimitProperties.class,
+    RateLimitProperties.class,
+    UrlPolicyProperties.class,
+    DnsProperties.class,
+    TimingProperties.class,
+    WarmupProperties.class
+})
 public class ProxyConfiguration {
 
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager upstreamConnectionManager(UpstreamClientProperties properties, CachingDnsResolver dnsResolver) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                           .register("http", new TimedPlainSocketFactory())
+                           .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                           .build(),
+            null,
+            dnsResolver
+        );
+        connectionManager.setMaxTotal(properties.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) properties.getValidateAfterInactivity().toMillis());
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public CloseableHttpClient upstreamHttpClient(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                                  UpstreamClientProperties properties) {
+        return clientBuilder(upstreamConnectionManager, properties)
+            .evictExpiredConnections()
+            .evictIdleConnections(properties.getMaxIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * Client for /proxy/stream: shares the upstream pool but leaves content codings alone, so a
+     * compressed upstream body reaches the client as is instead of being decoded in between.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient streamingHttpClient(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                                   UpstreamClientProperties properties) {
+        return clientBuilder(upstreamConnectionManager, properties)
+            .setConnectionManagerShared(true)
+            .disableContentCompression()
+            .build();
+    }
+
+    /**
+     * RestTemplate of buffered /proxy calls, over the connection pool or, with h2c, over the JDK
+     * client shared with /proxy/async, which then leaves the pool, its stats and the DNS cache
+     * out. Its requests can be aborted from another thread, which is how hedged attempts that lost
+     * the race and attempts past their deadline are cancelled.
+     */
+    @Bean
+    @Primary
+    public RestTemplate restTemplate(CloseableHttpClient upstreamHttpClient,
+                                     HttpClient asyncHttpClient,
+                                     UpstreamClientProperties properties,
+                                     BodyBuffers bodyBuffers) {
+        ClientHttpRequestFactory requestFactory;
+        if (properties.getProtocol() == UpstreamClientProperties.Protocol.H2C) {
+            requestFactory = new JdkClientHttpRequestFactory(asyncHttpClient, properties.getReadTimeout());
+        } else {
+            requestFactory = new HttpComponentsClientHttpRequestFactory(upstreamHttpClient) {
+                @Override
+                protected void postProcessHttpRequest(HttpUriRequest request) {
+                    Cancellation.register(request::abort);
+                }
+            };
+        }
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add(new UpstreamTimingInterceptor());
+        restTemplate.getMessageConverters().add(0, new ProxyBodyHttpMessageConverter(bodyBuffers));
+        return restTemplate;
+    }
+
+    @Bean
+    public RestTemplate streamingRestTemplate(@Qualifier("streamingHttpClient") CloseableHttpClient streamingHttpClient) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(streamingHttpClient));
+        restTemplate.getInterceptors().add(new UpstreamTimingInterceptor());
+        return restTemplate;
+    }
+
+    /**
+     * JDK client of /proxy/async, and of /proxy with h2c. Then the first request to a host offers
+     * an HTTP/2 upgrade; hosts that accept it get all further requests multiplexed over that one
+     * connection, the others keep being called over HTTP/1.1.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpClient asyncHttpClient(UpstreamClientProperties properties) {
+        return HttpClient.newBuilder()
+                         .version(properties.getProtocol() == UpstreamClientProperties.Protocol.H2C
+                             ? HttpClient.Version.HTTP_2
+                             : HttpClient.Version.HTTP_1_1)
+                         .followRedirects(HttpClient.Redirect.NORMAL)
+                         .connectTimeout(properties.getConnectTimeout())
+                         .build();
+    }
+
+    private static HttpClientBuilder clientBuilder(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                                   UpstreamClientProperties properties) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                                                   .setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+                                                   .setSocketTimeout((int) properties.getReadTimeout().toMillis())
+                                                   .setConnectionRequestTimeout((int) properties.getPoolAcquireTimeout().toMillis())
+                                                   .build();
+        return HttpClients.custom()
+                          .setConnectionManager(upstreamConnectionManager)
+                          .setDefaultRequestConfig(requestConfig)
+                          .setKeepAliveStrategy(keepAliveStrategy(properties.getKeepAlive().toMillis()));
+    }
+
+    static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAliveMillis) {
+        return (response, context) -> {
+            // Honour the upstream "Keep-Alive: timeout=N" hint, otherwise fall back to the configured default
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : defaultKeepAliveMillis;
+        };
     }
 }
@@ -0,0 +1,84 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    /** Requests per second and burst allowed to one client, identified by API key or else by IP address. */
+    private double clientRate = 50;
+    private int clientBurst = 100;
+    /** Requests per second and burst allowed to one upstream host, all clients together. */
+    private double hostRate = 200;
+    private int hostBurst = 400;
+    /** Request header carrying the client's API key. */
+    private String apiKeyHeader = "X-API-Key";
+    private long maxKeys = 100000;
+    private Duration idleExpiry = Duration.ofMinutes(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getClientRate() {
+        return clientRate;
+    }
+
+    public void setClientRate(double clientRate) {
+        this.clientRate = clientRate;
+    }
+
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(int clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    public double getHostRate() {
+        return hostRate;
+    }
+
+    public void setHostRate(double hostRate) {
+        this.hostRate = hostRate;
+    }
+
+    public int getHostBurst() {
+        return hostBurst;
+    }
+
+    public void setHostBurst(int hostBurst) {
+        this.hostBurst = hostBurst;
+    }
+
+    public String getApiKeyHeader() {
+        return apiKeyHeader;
+    }
+
+    public void setApiKeyHeader(String apiKeyHeader) {
+        this.apiKeyHeader = apiKeyHeader;
+    }
+
+    public long getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(long maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public Duration getIdleExpiry() {
+        return idleExpiry;
+    }
+
+    public void setIdleExpiry(Duration idleExpiry) {
+        this.idleExpiry = idleExpiry;
+    }
+}
@@ -0,0 +1,103 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.retry")
+public class RetryProperties {
+
+    private boolean enabled = true;
+    /** Attempts per request, the first one included. */
+    private int maxAttempts = 3;
+    private Duration initialBackoff = Duration.ofMillis(50);
+    private Duration maxBackoff = Duration.ofSeconds(1);
+    /** Budget for all attempts of one request, backoffs included; attempts still running are aborted once it is spent. */
+    private Duration deadline = Duration.ofSeconds(15);
+    private boolean hedgeEnabled = false;
+    /** Lower bound of the hedge delay, which otherwise is the host's observed p95 latency. */
+    private Duration hedgeMinDelay = Duration.ofMillis(20);
+    /** Latency samples a host needs before it is hedged. */
+    private int hedgeMinSamples = 20;
+    private int hedgeMaxInFlight = 32;
+    private int maxHosts = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled;
+    }
+
+    public void setHedgeEnabled(boolean hedgeEnabled) {
+        this.hedgeEnabled = hedgeEnabled;
+    }
+
+    public Duration getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    public void setHedgeMinDelay(Duration hedgeMinDelay) {
+        this.hedgeMinDelay = hedgeMinDelay;
+    }
+
+    public int getHedgeMinSamples() {
+        return hedgeMinSamples;
+    }
+
+    public void setHedgeMinSamples(int hedgeMinSamples) {
+        this.hedgeMinSamples = hedgeMinSamples;
+    }
+
+    public int getHedgeMaxInFlight() {
+        return hedgeMaxInFlight;
+    }
+
+    public void setHedgeMaxInFlight(int hedgeMaxInFlight) {
+        this.hedgeMaxInFlight = hedgeMaxInFlight;
+    }
+
+    public int getMaxHosts() {
+        return maxHosts;
+    }
+
+    public void setMaxHosts(int maxHosts) {
+        this.maxHosts = maxHosts;
+    }
+}
@@ -0,0 +1,38 @@
+package com.lt.proxy.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.timing")
+public class TimingProperties {
+
+    private boolean enabled = true;
+    /** Requests taking at least this long are kept in the slow request log. */
+    private Duration slowThreshold = Duration.ofSeconds(1);
+    /** Number of most recent slow requests kept. */
+    private int slowLogSize = 100;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    public int getSlowLogSize() {
+        return slowLogSize;
+    }
+
+    public void setSlowLogSize(int slowLogSize) {
+        this.slowLogSize = slowLogSize;
+    }
+}
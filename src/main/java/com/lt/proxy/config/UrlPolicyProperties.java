@@ -0,0 +1,30 @@
+package com.lt.proxy.config;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "proxy.url-policy")
+public class UrlPolicyProperties {
+
+    /** Hosts that may be proxied to, as exact hosts or {@code *.domain} wildcards; empty allows any host. */
+    private Set<String> allowedHosts = new LinkedHashSet<>();
+    /** Hosts that are never proxied to, taking precedence over the allowed ones. */
+    private Set<String> deniedHosts = new LinkedHashSet<>();
+
+    public Set<String> getAllowedHosts() {
+        return allowedHosts;
+    }
+
+    public void setAllowedHosts(Set<String> allowedHosts) {
+        this.allowedHosts = allowedHosts;
+    }
+
+    public Set<String> getDeniedHosts() {
+        return deniedHosts;
+    }
+
+    public void setDeniedHosts(Set<String> deniedHosts) {
+        this.deniedHosts = deniedHosts;
+    }
+}
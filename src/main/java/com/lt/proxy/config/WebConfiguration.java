@@ -0,0 +1,26 @@
+package com.lt.proxy.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import com.lt.proxy.application.RateLimitInterceptor;
+import com.lt.proxy.application.RequestTimingInterceptor;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    private final RequestTimingInterceptor requestTimingInterceptor;
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    public WebConfiguration(RequestTimingInterceptor requestTimingInterceptor, RateLimitInterceptor rateLimitInterceptor) {
+        this.requestTimingInterceptor = requestTimingInterceptor;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // /proxy/async and /proxy/batch complete on other threads and are not timed
+        registry.addInterceptor(requestTimingInterceptor).addPathPatterns("/proxy", "/proxy/stream");
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/proxy/**");
+    }
+}
@@ -0,0 +1,212 @@
+package com.lt.proxy.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.lt.proxy.config.DnsProperties;
+import com.lt.proxy.timing.RequestTiming;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Resolver of the pooled upstream client. Resolutions run on a small resolver pool, concurrent
+ * lookups of a host share one resolution, and the result is cached for {@code proxy.dns.ttl}
+ * (failures for {@code proxy.dns.negative-ttl}). Hosts still in use are resolved again in the
+ * background once {@code proxy.dns.refresh-after} has passed, keeping the previous addresses if
+ * that fails, so steady traffic never waits for DNS. Successive connections to a host with several
+ * addresses start with a different one in turn.
+ *
+ * <p>It binds its own meters: the connection pool depends on it, so it cannot depend on the
+ * meter registry the pool's metrics are bound to.
+ */
+@Component
+public class CachingDnsResolver implements DnsResolver, MeterBinder {
+
+    private final boolean enabled;
+    private final DnsResolver delegate;
+    private final long timeoutNanos;
+    private final Executor executor;
+    private final AsyncLoadingCache<String, Resolution> cache;
+    private final LongAdder failures = new LongAdder();
+    private volatile Timer resolved;
+    private volatile Timer failed;
+
+    @Autowired
+    public CachingDnsResolver(DnsProperties properties) {
+        this(properties, SystemDefaultDnsResolver.INSTANCE, Ticker.systemTicker(),
+             Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), runnable -> {
+                 Thread thread = new Thread(runnable, "dns-resolver");
+                 thread.setDaemon(true);
+                 return thread;
+             }));
+    }
+
+    CachingDnsResolver(DnsProperties properties, DnsResolver delegate, Ticker ticker, Executor executor) {
+        this.enabled = properties.isEnabled();
+        this.delegate = delegate;
+        this.timeoutNanos = properties.getTimeout().toNanos();
+        this.executor = executor;
+        long ttlNanos = properties.getTtl().toNanos();
+        long negativeTtlNanos = properties.getNegativeTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(properties.getMaxHosts())
+                             .expireAfter(new ResolutionExpiry(ttlNanos, negativeTtlNanos))
+                             .refreshAfterWrite(properties.getRefreshAfter())
+                             .executor(executor)
+                             .ticker(ticker)
+                             .recordStats()
+                             .buildAsync(new ResolutionLoader());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        resolved = Timer.builder("proxy.dns.resolution").tag("outcome", "SUCCESS").register(registry);
+        failed = Timer.builder("proxy.dns.resolution").tag("outcome", "FAILURE").register(registry);
+        Gauge.builder("proxy.dns.cache.entries", this, r -> r.cache.synchronous().estimatedSize()).register(registry);
+        FunctionCounter.builder("proxy.dns.cache.hits", this, r -> r.cache.synchronous().stats().hitCount()).register(registry);
+        FunctionCounter.builder("proxy.dns.cache.misses", this, r -> r.cache.synchronous().stats().missCount()).register(registry);
+        FunctionCounter.builder("proxy.dns.failures", failures, LongAdder::sum).register(registry);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        long start = System.nanoTime();
+        if (!enabled) {
+            try {
+                return delegate.resolve(host);
+            } finally {
+                RequestTiming.record(RequestTiming.Phase.DNS, start);
+            }
+        }
+        CompletableFuture<Resolution> resolution = cache.get(host);
+        try {
+            return resolution.get(timeoutNanos, TimeUnit.NANOSECONDS).addresses(host);
+        } catch (TimeoutException e) {
+            throw new UnknownHostException(host + ": resolution timed out");
+        } catch (ExecutionException e) {
+            throw new UnknownHostException(host + ": " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(host + ": resolution interrupted");
+        } finally {
+            RequestTiming.record(RequestTiming.Phase.DNS, start);
+        }
+    }
+
+    private Resolution lookup(String host) {
+        long start = System.nanoTime();
+        Resolution resolution;
+        try {
+            resolution = new Resolution(delegate.resolve(host), null);
+        } catch (UnknownHostException e) {
+            resolution = new Resolution(null, e);
+        }
+        Timer timer = resolution.error == null ? resolved : failed;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return resolution;
+    }
+
+    private final class ResolutionLoader implements CacheLoader<String, Resolution> {
+
+        @Override
+        public Resolution load(String host) {
+            return lookup(host);
+        }
+
+        @Override
+        public Resolution reload(String host, Resolution previous) {
+            Resolution resolution = lookup(host);
+            // A failed refresh keeps the addresses that worked until now
+            return resolution.error != null && previous.error == null ? previous : resolution;
+        }
+    }
+
+    private static final class ResolutionExpiry implements Expiry<String, Resolution> {
+
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        private ResolutionExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String host, Resolution resolution, long currentTime) {
+            return resolution.error != null ? negativeTtlNanos : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String host, Resolution resolution, long currentTime, long currentDuration) {
+            return expireAfterCreate(host, resolution, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String host, Resolution resolution, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * The addresses of a host, or the failure to resolve it.
+     */
+    private final class Resolution {
+
+        private final InetAddress[] addresses;
+        private final UnknownHostException error;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Resolution(InetAddress[] addresses, UnknownHostException error) {
+            this.addresses = addresses;
+            this.error = error;
+        }
+
+        /**
+         * All addresses, rotated by one on each call: the client connects to the first one and
+         * falls back to the others in order.
+         */
+        InetAddress[] addresses(String host) throws UnknownHostException {
+            if (error != null) {
+                failures.increment();
+                throw new UnknownHostException(error.getMessage() != null ? error.getMessage() : host);
+            }
+            int length = addresses.length;
+            InetAddress[] rotated = new InetAddress[length];
+            int first = length > 1 ? Math.floorMod(next.getAndIncrement(), length) : 0;
+            for (int i = 0; i < length; i++) {
+                rotated[i] = addresses[(first + i) % length];
+            }
+            return rotated;
+        }
+    }
+}
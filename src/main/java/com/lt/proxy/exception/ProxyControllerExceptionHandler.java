@@ -1,24 +1,33 @@
 package com.lt.proxy.exception;
 
+import java.time.Duration;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import com.lt.proxy.logging.ErrorLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.timing.RequestTiming;
 
 @ControllerAdvice
 public class ProxyControllerExceptionHandler {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyControllerExceptionHandler.class);
+    private final ProxyMetrics proxyMetrics;
+    private final ErrorLogger errorLogger;
+
+    public ProxyControllerExceptionHandler(ProxyMetrics proxyMetrics, ErrorLogger errorLogger) {
+        this.proxyMetrics = proxyMetrics;
+        this.errorLogger = errorLogger;
+    }
 
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<Map<String, String>> handleResourceNotFoundException(ResourceNotFoundException ex, HttpServletRequest request) {
-        LOGGER.error("Exception handled", ex);
-        return ResponseEntity
-            .status(HttpStatus.NOT_FOUND)
+        errorLogger.error(ex);
+        proxyMetrics.error(ex.getClass());
+        return serverTiming(ResponseEntity.status(HttpStatus.NOT_FOUND))
             .body(
                 Map.of(
                     "errorMessage", ex.getMessage()
@@ -28,13 +37,57 @@ public class ProxyControllerExceptionHandler {
 
     @ExceptionHandler(ProxyException.class)
     public ResponseEntity<Map<String, String>> handleProxyException(ProxyException ex, HttpServletRequest request) {
-        LOGGER.error("Exception handled", ex);
-        return ResponseEntity
-            .status(HttpStatus.BAD_REQUEST)
+        errorLogger.error(ex);
+        proxyMetrics.error(ex.getClass());
+        return serverTiming(ResponseEntity.status(HttpStatus.BAD_REQUEST))
+            .body(
+                Map.of(
+                    "errorMessage", ex.getMessage()
+                )
+            );
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleServiceUnavailableException(ServiceUnavailableException ex, HttpServletRequest request) {
+        errorLogger.warn(ex);
+        proxyMetrics.error(ex.getClass());
+        return serverTiming(retryAfter(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE), ex.getRetryAfter()))
+            .body(
+                Map.of(
+                    "errorMessage", ex.getMessage()
+                )
+            );
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Map<String, String>> handleTooManyRequestsException(TooManyRequestsException ex, HttpServletRequest request) {
+        errorLogger.warn(ex);
+        proxyMetrics.error(ex.getClass());
+        return serverTiming(retryAfter(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS), ex.getRetryAfter()))
             .body(
                 Map.of(
                     "errorMessage", ex.getMessage()
                 )
             );
     }
+
+    /**
+     * Adds the timing so far of a timed request that failed, as successful answers carry it.
+     */
+    private static ResponseEntity.BodyBuilder serverTiming(ResponseEntity.BodyBuilder response) {
+        String serverTiming = RequestTiming.current().serverTiming();
+        if (serverTiming != null) {
+            response.header(RequestTiming.SERVER_TIMING_HEADER, serverTiming);
+        }
+        return response;
+    }
+
+    private static ResponseEntity.BodyBuilder retryAfter(ResponseEntity.BodyBuilder response, Duration retryAfter) {
+        if (retryAfter != null) {
+            // Retry-After is in whole seconds, rounded up so clients never come back too early
+            long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        }
+        return response;
+    }
 }
@@ -9,4 +9,12 @@ public class ProxyException extends RuntimeException {
     public ProxyException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * For expected failures (rejected urls, known upstream statuses) where the stack trace carries
+     * no information and capturing it is the most expensive part of the error path.
+     */
+    public ProxyException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, false, writableStackTrace);
+    }
 }
@@ -2,7 +2,8 @@ package com.lt.proxy.exception;
 
 public class ResourceNotFoundException extends RuntimeException {
 
+    // Always an expected upstream answer: no stack trace is captured
     public ResourceNotFoundException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 }
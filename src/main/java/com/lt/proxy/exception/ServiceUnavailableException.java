@@ -0,0 +1,25 @@
+package com.lt.proxy.exception;
+
+import java.time.Duration;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    // Raised on fast-fail paths meant to be cheap: no stack trace is captured
+    public ServiceUnavailableException(String message) {
+        this(message, null);
+    }
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * When the client may try again, or {@code null} when unknown.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
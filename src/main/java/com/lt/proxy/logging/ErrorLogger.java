@@ -0,0 +1,96 @@
+package com.lt.proxy.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.ErrorLoggingProperties;
+
+/**
+ * Logs handled exceptions at most {@code max-per-interval} times per exception type and interval;
+ * the number of suppressed occurrences is reported with the next logged one. Stackless exceptions
+ * are logged on a single line.
+ */
+@Component
+public class ErrorLogger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ErrorLogger.class);
+
+    private final int maxPerInterval;
+    private final long intervalNanos;
+    private final ConcurrentHashMap<Class<?>, Window> windows = new ConcurrentHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+
+    public ErrorLogger(ErrorLoggingProperties properties) {
+        this.maxPerInterval = properties.getMaxPerInterval();
+        this.intervalNanos = properties.getInterval().toNanos();
+    }
+
+    public void error(Throwable ex) {
+        log(ex, false);
+    }
+
+    public void warn(Throwable ex) {
+        log(ex, true);
+    }
+
+    public long suppressedCount() {
+        return suppressed.sum();
+    }
+
+    private void log(Throwable ex, boolean warn) {
+        if (warn ? !LOGGER.isWarnEnabled() : !LOGGER.isErrorEnabled()) {
+            return;
+        }
+        Window window = windows.computeIfAbsent(ex.getClass(), type -> new Window(System.nanoTime()));
+        long previouslySuppressed = window.roll(System.nanoTime(), intervalNanos);
+        if (window.logged.incrementAndGet() > maxPerInterval) {
+            window.suppressed.incrementAndGet();
+            suppressed.increment();
+            return;
+        }
+
+        String message = previouslySuppressed > 0
+            ? "Exception handled (" + previouslySuppressed + " similar suppressed)"
+            : "Exception handled";
+        boolean stackless = ex.getStackTrace().length == 0;
+        if (warn) {
+            if (stackless) {
+                LOGGER.warn("{}: {}", message, ex.toString());
+            } else {
+                LOGGER.warn(message, ex);
+            }
+        } else if (stackless) {
+            LOGGER.error("{}: {}", message, ex.toString());
+        } else {
+            LOGGER.error(message, ex);
+        }
+    }
+
+    private static final class Window {
+
+        private final AtomicLong start;
+        private final AtomicInteger logged = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private Window(long start) {
+            this.start = new AtomicLong(start);
+        }
+
+        /**
+         * Starts a new interval when the current one is over, returning the number of occurrences
+         * suppressed in the interval just closed.
+         */
+        private long roll(long now, long intervalNanos) {
+            long current = start.get();
+            if (now - current < intervalNanos || !start.compareAndSet(current, now)) {
+                return 0;
+            }
+            logged.set(0);
+            return suppressed.getAndSet(0);
+        }
+    }
+}
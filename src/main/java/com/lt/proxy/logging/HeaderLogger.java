@@ -0,0 +1,143 @@
+package com.lt.proxy.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.HeaderLoggingProperties;
+import com.lt.proxy.timing.RequestTiming;
+
+/**
+ * Logs upstream response headers. The request thread only decides whether the response is
+ * sampled and hands the headers over to a bounded queue; formatting and the actual logging
+ * happen on a background thread, and entries are dropped when the queue is full.
+ */
+@Component
+public class HeaderLogger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeaderLogger.class);
+
+    private final boolean enabled;
+    private final int sampleRate;
+    private final Set<String> include;
+    private final Set<String> exclude;
+    private final BlockingQueue<Entry> queue;
+    private final LongAdder dropped = new LongAdder();
+    private Thread drainer;
+
+    public HeaderLogger(HeaderLoggingProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.sampleRate = Math.max(1, properties.getSampleRate());
+        this.include = lowerCase(properties.getInclude());
+        this.exclude = lowerCase(properties.getExclude());
+        this.queue = properties.isAsync() ? new ArrayBlockingQueue<>(properties.getQueueCapacity()) : null;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (queue != null) {
+            drainer = new Thread(this::drain, "header-logger");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (drainer != null) {
+            drainer.interrupt();
+        }
+    }
+
+    public void log(String proxyUrl, HttpHeaders headers) {
+        if (!enabled || !LOGGER.isInfoEnabled()) {
+            return;
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (queue == null) {
+            write(proxyUrl, headers);
+        } else if (!queue.offer(new Entry(proxyUrl, headers))) {
+            dropped.increment();
+        }
+        RequestTiming.record(RequestTiming.Phase.HEADERS, start);
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    String format(String proxyUrl, HttpHeaders headers) {
+        List<String> lines = new ArrayList<>(headers.size());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (isLogged(header.getKey())) {
+                lines.add(header.getKey() + " :: " + header.getValue());
+            }
+        }
+        lines.sort(null);
+
+        StringBuilder buffer = new StringBuilder(512);
+        buffer.append('\n')
+              .append("==================================\n")
+              .append("Response Headers (proxy url: ").append(proxyUrl).append(")\n")
+              .append("==================================\n");
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                buffer.append('\n');
+            }
+            buffer.append(lines.get(i));
+        }
+        return buffer.toString();
+    }
+
+    private boolean isLogged(String headerName) {
+        String name = headerName.toLowerCase(Locale.ROOT);
+        return (include.isEmpty() || include.contains(name)) && !exclude.contains(name);
+    }
+
+    private void write(String proxyUrl, HttpHeaders headers) {
+        LOGGER.info(format(proxyUrl, headers));
+    }
+
+    private void drain() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Entry entry = queue.take();
+                write(entry.proxyUrl, entry.headers);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Set<String> lowerCase(Set<String> names) {
+        return names.stream()
+                    .map(name -> name.toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static final class Entry {
+
+        private final String proxyUrl;
+        private final HttpHeaders headers;
+
+        private Entry(String proxyUrl, HttpHeaders headers) {
+            this.proxyUrl = proxyUrl;
+            this.headers = headers;
+        }
+    }
+}
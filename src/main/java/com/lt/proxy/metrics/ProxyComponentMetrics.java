@@ -0,0 +1,107 @@
+package com.lt.proxy.metrics;
+
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.buffer.BodyBuffers;
+import com.lt.proxy.cache.DiskCache;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.logging.ErrorLogger;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.service.RequestCoalescer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the statistics the proxy components already keep (pool, caches, coalescing, body buffers,
+ * header and error logging) as meters, read on scrape.
+ */
+@Component
+public class ProxyComponentMetrics implements MeterBinder {
+
+    private final PoolingHttpClientConnectionManager upstreamConnectionManager;
+    private final ResponseCache responseCache;
+    private final DiskCache diskCache;
+    private final RequestCoalescer requestCoalescer;
+    private final HeaderLogger headerLogger;
+    private final NegativeCache negativeCache;
+    private final ErrorLogger errorLogger;
+    private final BodyBuffers bodyBuffers;
+
+    public ProxyComponentMetrics(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                 ResponseCache responseCache,
+                                 DiskCache diskCache,
+                                 RequestCoalescer requestCoalescer,
+                                 HeaderLogger headerLogger,
+                                 NegativeCache negativeCache,
+                                 ErrorLogger errorLogger,
+                                 BodyBuffers bodyBuffers) {
+        this.upstreamConnectionManager = upstreamConnectionManager;
+        this.responseCache = responseCache;
+        this.diskCache = diskCache;
+        this.requestCoalescer = requestCoalescer;
+        this.headerLogger = headerLogger;
+        this.negativeCache = negativeCache;
+        this.errorLogger = errorLogger;
+        this.bodyBuffers = bodyBuffers;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("proxy.upstream.pool.leased", upstreamConnectionManager, m -> m.getTotalStats().getLeased()).register(registry);
+        Gauge.builder("proxy.upstream.pool.pending", upstreamConnectionManager, m -> m.getTotalStats().getPending()).register(registry);
+        Gauge.builder("proxy.upstream.pool.available", upstreamConnectionManager, m -> m.getTotalStats().getAvailable()).register(registry);
+        Gauge.builder("proxy.upstream.pool.max", upstreamConnectionManager, m -> m.getTotalStats().getMax()).register(registry);
+
+        gauge(registry, "proxy.cache.entries", responseCache, ResponseCache::stats, "entries");
+        gauge(registry, "proxy.cache.size.bytes", responseCache, ResponseCache::stats, "weightBytes");
+        counter(registry, "proxy.cache.hits", responseCache, ResponseCache::stats, "hits");
+        counter(registry, "proxy.cache.misses", responseCache, ResponseCache::stats, "misses");
+        counter(registry, "proxy.cache.evictions", responseCache, ResponseCache::stats, "evictions");
+        counter(registry, "proxy.cache.revalidations", responseCache, ResponseCache::stats, "revalidations");
+        counter(registry, "proxy.cache.not.modified", responseCache, ResponseCache::stats, "notModified");
+
+        gauge(registry, "proxy.cache.disk.entries", diskCache, DiskCache::stats, "entries");
+        gauge(registry, "proxy.cache.disk.size.bytes", diskCache, DiskCache::stats, "diskBytes");
+        gauge(registry, "proxy.cache.disk.live.bytes", diskCache, DiskCache::stats, "liveBytes");
+        gauge(registry, "proxy.cache.disk.hit.ratio", diskCache, DiskCache::stats, "hitRatio");
+        counter(registry, "proxy.cache.disk.hits", diskCache, DiskCache::stats, "hits");
+        counter(registry, "proxy.cache.disk.misses", diskCache, DiskCache::stats, "misses");
+        counter(registry, "proxy.cache.disk.evictions", diskCache, DiskCache::stats, "evictions");
+        counter(registry, "proxy.cache.disk.compactions", diskCache, DiskCache::stats, "compactions");
+
+        gauge(registry, "proxy.coalescing.in.flight", requestCoalescer, RequestCoalescer::stats, "inFlight");
+        counter(registry, "proxy.coalescing.executed", requestCoalescer, RequestCoalescer::stats, "executed");
+        counter(registry, "proxy.coalescing.coalesced", requestCoalescer, RequestCoalescer::stats, "coalesced");
+        counter(registry, "proxy.coalescing.rejected", requestCoalescer, RequestCoalescer::stats, "rejected");
+
+        gauge(registry, "proxy.buffer.reserved.bytes", bodyBuffers, BodyBuffers::stats, "reservedBytes");
+        gauge(registry, "proxy.buffer.spilled.in.use", bodyBuffers, BodyBuffers::stats, "spilledInUse");
+        counter(registry, "proxy.buffer.spilled", bodyBuffers, BodyBuffers::stats, "spilled");
+        counter(registry, "proxy.buffer.spilled.bytes", bodyBuffers, BodyBuffers::stats, "spilledBytes");
+
+        Gauge.builder("proxy.negative.cache.entries", negativeCache, NegativeCache::size).register(registry);
+        FunctionCounter.builder("proxy.negative.cache.hits", negativeCache, NegativeCache::hitCount).register(registry);
+
+        FunctionCounter.builder("proxy.header.logging.dropped", headerLogger, HeaderLogger::droppedCount).register(registry);
+        FunctionCounter.builder("proxy.error.logging.suppressed", errorLogger, ErrorLogger::suppressedCount).register(registry);
+    }
+
+    // Meters only keep a weak reference to their state object, so the component itself is passed as state
+    private static <T> void gauge(MeterRegistry registry, String name, T component, Function<T, Map<String, Object>> stats, String key) {
+        Gauge.builder(name, component, c -> value(stats.apply(c), key)).register(registry);
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T component, Function<T, Map<String, Object>> stats, String key) {
+        FunctionCounter.builder(name, component, c -> value(stats.apply(c), key)).register(registry);
+    }
+
+    private static double value(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
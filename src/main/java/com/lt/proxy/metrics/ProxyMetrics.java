@@ -0,0 +1,192 @@
+package com.lt.proxy.metrics;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import com.lt.proxy.config.MetricsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Per-upstream-host proxy metrics. Host tags are capped at {@code proxy.metrics.max-host-tags}
+ * distinct values so arbitrary proxy urls cannot grow the registry without bound. Meters are
+ * registered once per host, status and exception type and kept here, so recording on the request
+ * path neither builds meters nor looks them up in the registry.
+ */
+@Component
+public class ProxyMetrics {
+
+    public static final String OTHER_HOST = "other";
+
+    private final MeterRegistry registry;
+    private final int maxHostTags;
+    private final boolean percentileHistogram;
+    private final Set<String> taggedHosts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Bounded by the host tag budget, and by the exception types raised
+    private final ConcurrentMap<String, HostMeters> hostMeters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends Throwable>, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final DistributionSummary bytesOut;
+
+    public ProxyMetrics(MeterRegistry registry, MetricsProperties properties) {
+        this.registry = registry;
+        this.maxHostTags = properties.getMaxHostTags();
+        this.percentileHistogram = properties.isPercentileHistogram();
+        this.bytesOut = registry.summary("proxy.client.bytes.out");
+        registry.gauge("proxy.upstream.in.flight", inFlight);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Marks the start of an upstream call, returning the start timestamp to pass back on completion.
+     */
+    public long upstreamStarted() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void upstreamCompleted(String proxyUrl, int statusCode, long bytesIn, long startNanos) {
+        inFlight.decrementAndGet();
+        HostMeters meters = hostMeters(proxyUrl);
+        meters.timer(statusCode).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (bytesIn >= 0) {
+            meters.bytesIn.record(bytesIn);
+        }
+    }
+
+    public void upstreamFailed(String proxyUrl, Throwable error, long startNanos) {
+        inFlight.decrementAndGet();
+        int statusCode = error instanceof RestClientResponseException
+            ? ((RestClientResponseException) error).getRawStatusCode()
+            : -1;
+        hostMeters(proxyUrl).timer(statusCode).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.record(bytes);
+    }
+
+    public void error(Class<? extends Throwable> exceptionType) {
+        Counter counter = errorCounters.get(exceptionType);
+        if (counter == null) {
+            counter = errorCounters.computeIfAbsent(exceptionType, type -> Counter.builder("proxy.errors")
+                                                                               .tag("exception", type.getSimpleName())
+                                                                               .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * Host tag for the url, {@link #OTHER_HOST} once the distinct host budget is used up.
+     */
+    public String hostTag(String proxyUrl) {
+        String host = host(proxyUrl);
+        if (host.isEmpty()) {
+            return OTHER_HOST;
+        }
+        if (taggedHosts.contains(host)) {
+            return host;
+        }
+        if (taggedHosts.size() < maxHostTags && taggedHosts.add(host)) {
+            return host;
+        }
+        return taggedHosts.contains(host) ? host : OTHER_HOST;
+    }
+
+    /**
+     * Host (and port) of the url, without allocating a {@link java.net.URI}.
+     */
+    public static String host(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        int userInfo = url.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private HostMeters hostMeters(String proxyUrl) {
+        String host = hostTag(proxyUrl);
+        HostMeters meters = hostMeters.get(host);
+        return meters != null ? meters : hostMeters.computeIfAbsent(host, HostMeters::new);
+    }
+
+    private Timer timer(String host, String status, String outcome) {
+        return Timer.builder("proxy.upstream.requests")
+                    .tag("host", host)
+                    .tag("status", status)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram(percentileHistogram)
+                    .register(registry);
+    }
+
+    private static String outcome(int statusCode) {
+        if (statusCode >= 500) {
+            return "SERVER_ERROR";
+        }
+        if (statusCode >= 400) {
+            return "CLIENT_ERROR";
+        }
+        if (statusCode >= 300) {
+            return "REDIRECTION";
+        }
+        return "SUCCESS";
+    }
+
+    /**
+     * Meters of one host tag: the byte summary and one timer per status code, created on first use.
+     * Slot 0 holds the timer of calls that failed without a status.
+     */
+    private final class HostMeters {
+
+        private static final int MAX_STATUS = 600;
+
+        private final String host;
+        private final DistributionSummary bytesIn;
+        private final AtomicReferenceArray<Timer> timers = new AtomicReferenceArray<>(MAX_STATUS);
+
+        private HostMeters(String host) {
+            this.host = host;
+            this.bytesIn = DistributionSummary.builder("proxy.upstream.bytes.in")
+                                              .baseUnit("bytes")
+                                              .tag("host", host)
+                                              .register(registry);
+        }
+
+        Timer timer(int statusCode) {
+            if (statusCode >= MAX_STATUS) {
+                return ProxyMetrics.this.timer(host, Integer.toString(statusCode), outcome(statusCode));
+            }
+            int slot = Math.max(0, statusCode);
+            Timer timer = timers.get(slot);
+            if (timer == null) {
+                timer = slot == 0
+                    ? ProxyMetrics.this.timer(host, "IO_ERROR", "ERROR")
+                    : ProxyMetrics.this.timer(host, Integer.toString(statusCode), outcome(statusCode));
+                // Registering twice returns the same timer, a lost race only costs a lookup
+                timers.set(slot, timer);
+            }
+            return timer;
+        }
+    }
+}
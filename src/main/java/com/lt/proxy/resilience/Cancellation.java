@@ -0,0 +1,79 @@
+package com.lt.proxy.resilience;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets an upstream attempt blocked on one thread be aborted from another: the HTTP client
+ * {@link #register(Runnable) registers} how to abort the request the current attempt is sending,
+ * and {@link #cancel()} runs it, right away when the attempt was cancelled before sending.
+ */
+public final class Cancellation {
+
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    // Guarded by this
+    private Runnable abort;
+    private boolean cancelled;
+
+    /**
+     * Registers how to abort the request about to be sent by the attempt running on this thread, if any.
+     */
+    public static void register(Runnable abort) {
+        Cancellation current = CURRENT.get();
+        if (current != null) {
+            current.onCancel(abort);
+        }
+    }
+
+    /**
+     * Whether the attempt running on this thread was cancelled, so that its failure says nothing
+     * about the upstream.
+     */
+    public static boolean isCurrentCancelled() {
+        Cancellation current = CURRENT.get();
+        return current != null && current.isCancelled();
+    }
+
+    <T> T run(Supplier<T> attempt) {
+        Cancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return attempt.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    void cancel() {
+        Runnable toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = abort;
+        }
+        if (toRun != null) {
+            toRun.run();
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void onCancel(Runnable abort) {
+        boolean alreadyCancelled;
+        synchronized (this) {
+            this.abort = abort;
+            alreadyCancelled = cancelled;
+        }
+        if (alreadyCancelled) {
+            abort.run();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.lt.proxy.resilience;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * One circuit breaker per upstream host, consulted before every upstream call so that calls to a
+ * failing or slow host fail fast instead of waiting for their timeout. Upstream 4xx answers say
+ * nothing about the health of the host and are ignored.
+ */
+@Component
+public class CircuitBreakers {
+
+    // The states the breakers move between, nothing forces or disables them
+    private static final CircuitBreaker.State[] STATES =
+        {CircuitBreaker.State.CLOSED, CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN};
+
+    private final boolean enabled;
+    private final CircuitBreakerConfig config;
+    private final Cache<String, HostBreaker> breakers;
+    private final ProxyMetrics proxyMetrics;
+
+    public CircuitBreakers(CircuitBreakerProperties properties, ProxyMetrics proxyMetrics) {
+        this.enabled = properties.isEnabled();
+        this.proxyMetrics = proxyMetrics;
+        this.config = CircuitBreakerConfig.custom()
+                                          .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+                                          .slidingWindowSize((int) Math.max(1, properties.getSlidingWindow().toSeconds()))
+                                          .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                                          .failureRateThreshold(properties.getFailureRateThreshold())
+                                          .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+                                          .slowCallDurationThreshold(properties.getSlowCallDuration())
+                                          .waitDurationInOpenState(properties.getWaitDurationInOpenState())
+                                          .permittedNumberOfCallsInHalfOpenState(properties.getPermittedCallsInHalfOpenState())
+                                          .ignoreExceptions(HttpClientErrorException.class)
+                                          .build();
+        this.breakers = Caffeine.newBuilder()
+                                .maximumSize(properties.getMaxHosts())
+                                .expireAfterAccess(properties.getIdleExpiry())
+                                .build();
+
+        MeterRegistry registry = proxyMetrics.getRegistry();
+        for (CircuitBreaker.State state : STATES) {
+            Gauge.builder("proxy.circuit.breaker.hosts", this, circuitBreakers -> circuitBreakers.count(state))
+                 .tag("state", state.name().toLowerCase(Locale.ROOT))
+                 .register(registry);
+        }
+    }
+
+    /**
+     * Asks the breaker of the url's host for permission to call it.
+     *
+     * @throws ServiceUnavailableException when the breaker is open
+     */
+    public Call acquire(String proxyUrl) {
+        if (!enabled) {
+            return Call.UNGUARDED;
+        }
+        String host = ProxyMetrics.host(proxyUrl);
+        HostBreaker hostBreaker = breakers.get(host, this::create);
+        if (!hostBreaker.breaker.tryAcquirePermission()) {
+            hostBreaker.notPermitted.increment();
+            throw new ServiceUnavailableException("Circuit breaker open, not calling upstream host: " + host);
+        }
+        return new Call(hostBreaker.breaker);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new TreeMap<>();
+        breakers.asMap().forEach((host, hostBreaker) -> {
+            CircuitBreaker breaker = hostBreaker.breaker;
+            CircuitBreaker.Metrics metrics = breaker.getMetrics();
+            map.put(host, Map.of(
+                "state", breaker.getState().name(),
+                "failureRate", metrics.getFailureRate(),
+                "slowCallRate", metrics.getSlowCallRate(),
+                "bufferedCalls", metrics.getNumberOfBufferedCalls(),
+                "notPermittedCalls", metrics.getNumberOfNotPermittedCalls()
+            ));
+        });
+        return map;
+    }
+
+    private long count(CircuitBreaker.State state) {
+        return breakers.asMap().values().stream().filter(hostBreaker -> hostBreaker.breaker.getState() == state).count();
+    }
+
+    private HostBreaker create(String host) {
+        return new HostBreaker(CircuitBreaker.of(host, config), proxyMetrics.hostTag("http://" + host));
+    }
+
+    /**
+     * The breaker of a host with its meters, registered once so that rejecting calls during an
+     * outage costs no registry lookup.
+     */
+    private final class HostBreaker {
+
+        private final CircuitBreaker breaker;
+        private final Counter notPermitted;
+        private final Map<CircuitBreaker.State, Counter> transitions = new EnumMap<>(CircuitBreaker.State.class);
+
+        private HostBreaker(CircuitBreaker breaker, String hostTag) {
+            this.breaker = breaker;
+            this.notPermitted = proxyMetrics.getRegistry().counter("proxy.circuit.breaker.not.permitted", "host", hostTag);
+            for (CircuitBreaker.State state : STATES) {
+                transitions.put(state, transitionCounter(hostTag, state));
+            }
+            breaker.getEventPublisher()
+                   .onStateTransition(event -> {
+                       CircuitBreaker.State to = event.getStateTransition().getToState();
+                       Counter counter = transitions.get(to);
+                       (counter != null ? counter : transitionCounter(hostTag, to)).increment();
+                   });
+        }
+
+        private Counter transitionCounter(String hostTag, CircuitBreaker.State to) {
+            return proxyMetrics.getRegistry().counter("proxy.circuit.breaker.transitions", "host", hostTag, "to", to.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * A permitted upstream call, to be completed with {@link #success()} or {@link #failure(Throwable)},
+     * or {@link #release() released} when it is abandoned before reaching the upstream.
+     */
+    public static final class Call {
+
+        static final Call UNGUARDED = new Call(null);
+
+        private final CircuitBreaker breaker;
+        private final long start;
+
+        private Call(CircuitBreaker breaker) {
+            this.breaker = breaker;
+            this.start = System.nanoTime();
+        }
+
+        public void success() {
+            if (breaker != null) {
+                breaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void failure(Throwable error) {
+            if (breaker != null) {
+                breaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, error);
+            }
+        }
+
+        public void release() {
+            if (breaker != null) {
+                breaker.releasePermission();
+            }
+        }
+    }
+}
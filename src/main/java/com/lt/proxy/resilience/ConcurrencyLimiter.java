@@ -0,0 +1,285 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Adaptive limits on the upstream calls in flight, one across all hosts and one per host. Each
+ * limit follows TCP Vegas: it grows while the measured upstream round-trip time stays close to the
+ * lowest one seen, shrinks once it rises (requests are queueing somewhere) and is cut on upstream
+ * errors and timeouts. Calls over a limit are rejected right away instead of waiting for a thread
+ * or a connection, so latency stays bounded under overload.
+ *
+ * <p>Only hosts keep a round-trip time baseline: a sample is compared against its own host's
+ * lowest RTT, and the global limit follows the same ratio. A fast host thus never makes a slow
+ * one look congested to the global limit.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    // Host tag of the rejections by the global limit, which are not told apart by host
+    private static final String ALL_HOSTS = "all";
+
+    private final boolean enabled;
+    private final ConcurrencyLimitProperties properties;
+    private final Gate global;
+    private final Cache<String, Gate> hosts;
+    private final ProxyMetrics proxyMetrics;
+
+    public ConcurrencyLimiter(ConcurrencyLimitProperties properties, ProxyMetrics proxyMetrics) {
+        this.enabled = properties.isEnabled();
+        this.properties = properties;
+        this.proxyMetrics = proxyMetrics;
+        this.global = new Gate(new VegasLimit(properties.getInitialLimit(), properties.getMinLimit(), properties.getMaxLimit()),
+                               rejectedCounter("global", ALL_HOSTS));
+        this.hosts = Caffeine.newBuilder()
+                             .maximumSize(properties.getMaxHosts())
+                             .expireAfterAccess(properties.getIdleExpiry())
+                             .build();
+
+        MeterRegistry registry = proxyMetrics.getRegistry();
+        Gauge.builder("proxy.concurrency.limit", global, gate -> gate.limit.get()).register(registry);
+        Gauge.builder("proxy.concurrency.in.flight", global, gate -> gate.inFlight.get()).register(registry);
+    }
+
+    /**
+     * Takes a slot under the global and the host's limit for one upstream call.
+     *
+     * @throws ServiceUnavailableException when either limit is reached
+     */
+    public Permit acquire(String proxyUrl) {
+        if (!enabled) {
+            return Permit.UNLIMITED;
+        }
+        String host = ProxyMetrics.host(proxyUrl);
+        Gate hostGate = hosts.get(host, h -> new Gate(
+            new VegasLimit(properties.getHostInitialLimit(), properties.getHostMinLimit(), properties.getHostMaxLimit()),
+            rejectedCounter("host", proxyMetrics.hostTag(proxyUrl))));
+        if (!global.tryAcquire()) {
+            throw reject("Concurrency limit of " + global.limit.get() + " upstream calls reached, cannot proxy to: " + proxyUrl);
+        }
+        if (!hostGate.tryAcquire()) {
+            global.release();
+            throw reject("Concurrency limit of " + hostGate.limit.get() + " calls reached for upstream host: " + host);
+        }
+        return new Permit(global, hostGate);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> hostStats = new TreeMap<>();
+        hosts.asMap().forEach((host, gate) -> {
+            Map<String, Object> stats = gate.stats();
+            stats.put("minRttMillis", Duration.ofNanos(gate.limit.rttNoLoad()).toMillis());
+            hostStats.put(host, stats);
+        });
+        Map<String, Object> map = new LinkedHashMap<>(global.stats());
+        map.put("hosts", hostStats);
+        return map;
+    }
+
+    private ServiceUnavailableException reject(String message) {
+        return new ServiceUnavailableException(message, properties.getRetryAfter());
+    }
+
+    // Registered along with its gate, shedding load costs no registry lookup
+    private Counter rejectedCounter(String scope, String hostTag) {
+        return proxyMetrics.getRegistry().counter("proxy.concurrency.limit.rejected", "scope", scope, "host", hostTag);
+    }
+
+    /**
+     * A slot for one upstream call, to be completed once with {@link #success()} when the upstream
+     * answered, {@link #dropped()} on server errors and {@link #failure(Throwable)} on exceptions,
+     * or {@link #ignore() ignored} when the call never reached the upstream.
+     */
+    public static final class Permit {
+
+        static final Permit UNLIMITED = new Permit(null, null);
+
+        private final Gate global;
+        private final Gate host;
+        private final long start;
+        private long rttNanos = -1;
+
+        private Permit(Gate global, Gate host) {
+            this.global = global;
+            this.host = host;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Takes the round-trip time sample now, for calls whose slot is held past the upstream's
+         * answer (streaming the body to the client).
+         */
+        public void responded() {
+            if (rttNanos < 0) {
+                rttNanos = System.nanoTime() - start;
+            }
+        }
+
+        public void success() {
+            responded();
+            complete(false);
+        }
+
+        public void dropped() {
+            responded();
+            complete(true);
+        }
+
+        /**
+         * Client errors and failures after the upstream responded (a client going away while the
+         * body is copied) say nothing about upstream overload and complete the call as a success.
+         */
+        public void failure(Throwable error) {
+            if (error instanceof HttpClientErrorException || rttNanos >= 0) {
+                success();
+            } else {
+                dropped();
+            }
+        }
+
+        public void ignore() {
+            if (global != null) {
+                global.release();
+                host.release();
+            }
+        }
+
+        private void complete(boolean dropped) {
+            if (global != null) {
+                double gradient = dropped ? Double.NaN : host.limit.gradient(rttNanos);
+                global.complete(gradient, dropped);
+                host.complete(gradient, dropped);
+            }
+        }
+    }
+
+    private static final class Gate {
+
+        private final VegasLimit limit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+        private final Counter rejectedCounter;
+
+        private Gate(VegasLimit limit, Counter rejectedCounter) {
+            this.limit = limit;
+            this.rejectedCounter = rejectedCounter;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= limit.get()) {
+                    rejected.incrementAndGet();
+                    rejectedCounter.increment();
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void complete(double gradient, boolean dropped) {
+            limit.sample(gradient, inFlight.getAndDecrement(), dropped);
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("limit", limit.get());
+            map.put("inFlight", inFlight.get());
+            map.put("rejected", rejected.get());
+            return map;
+        }
+    }
+
+    /**
+     * TCP Vegas applied to request concurrency: the queue built up somewhere is estimated as
+     * {@code limit * (1 - minRtt / rtt)}; the limit grows by {@code log10(limit)} while that queue is
+     * under {@code 3 * log10(limit)} and shrinks by as much once it is over {@code 6 * log10(limit)}.
+     * A host's limit tracks the lowest RTT, forgotten every {@code 30 * limit} samples to follow
+     * baseline changes; the global limit is fed the {@code minRtt / rtt} gradients of the hosts.
+     */
+    static final class VegasLimit {
+
+        private static final double DROP_FACTOR = 0.9;
+        private static final int PROBE_MULTIPLIER = 30;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private volatile double limit;
+        // Guarded by this
+        private long rttNoLoad;
+        private long samplesSinceProbe;
+
+        VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = initialLimit;
+        }
+
+        int get() {
+            return (int) limit;
+        }
+
+        synchronized long rttNoLoad() {
+            return rttNoLoad;
+        }
+
+        /**
+         * Ratio of the lowest RTT to this sample's, or {@code NaN} when the sample sets a new baseline
+         * and cannot be compared.
+         */
+        synchronized double gradient(long rttNanos) {
+            if (rttNanos <= 0) {
+                return Double.NaN;
+            }
+            if (rttNoLoad == 0 || rttNanos < rttNoLoad || ++samplesSinceProbe > PROBE_MULTIPLIER * limit) {
+                rttNoLoad = rttNanos;
+                samplesSinceProbe = 0;
+                return Double.NaN;
+            }
+            return (double) rttNoLoad / rttNanos;
+        }
+
+        synchronized void sample(double gradient, int inFlight, boolean dropped) {
+            double current = limit;
+            if (dropped) {
+                limit = Math.max(minLimit, current * DROP_FACTOR);
+                return;
+            }
+            if (Double.isNaN(gradient)) {
+                return;
+            }
+            // With fewer calls in flight than half the limit the sample says nothing about its headroom
+            if (inFlight * 2 < current) {
+                return;
+            }
+            double step = Math.max(1, Math.log10(current));
+            double queue = Math.ceil(current * (1 - gradient));
+            if (queue <= 3 * step) {
+                current += step;
+            } else if (queue >= 6 * step) {
+                current -= step;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, current));
+        }
+    }
+}
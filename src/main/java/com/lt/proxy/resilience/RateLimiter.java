@@ -0,0 +1,197 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.exception.TooManyRequestsException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Token-bucket rate limits per client and per upstream host. Buckets live in bounded maps that
+ * forget idle keys, and taking a token is a single compare-and-set on the bucket's state. Clients
+ * are limited per /proxy request, hosts per canonical upstream url about to be called.
+ */
+@Component
+public class RateLimiter {
+
+    private final boolean enabled;
+    private final RateLimitProperties properties;
+    private final Cache<String, TokenBucket> clients;
+    private final Cache<String, TokenBucket> hosts;
+    private final ProxyMetrics proxyMetrics;
+    private final Counter clientRejected;
+    private final Ticker ticker;
+
+    @Autowired
+    public RateLimiter(RateLimitProperties properties, ProxyMetrics proxyMetrics) {
+        this(properties, proxyMetrics, Ticker.systemTicker());
+    }
+
+    RateLimiter(RateLimitProperties properties, ProxyMetrics proxyMetrics, Ticker ticker) {
+        this.enabled = properties.isEnabled();
+        this.properties = properties;
+        this.proxyMetrics = proxyMetrics;
+        this.ticker = ticker;
+        this.clients = buckets(properties, ticker);
+        this.hosts = buckets(properties, ticker);
+
+        MeterRegistry registry = proxyMetrics.getRegistry();
+        // Client rejections are not told apart by host
+        this.clientRejected = rejectedCounter("client", ProxyMetrics.OTHER_HOST);
+        Gauge.builder("proxy.rate.limit.keys", clients, Cache::estimatedSize).tag("scope", "client").register(registry);
+        Gauge.builder("proxy.rate.limit.keys", hosts, Cache::estimatedSize).tag("scope", "host").register(registry);
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     */
+    public Quota acquire(String clientKey) {
+        if (!enabled) {
+            return Quota.UNLIMITED;
+        }
+        long now = ticker.read();
+        TokenBucket client = clients.get(clientKey, key -> new TokenBucket(properties.getClientRate(), properties.getClientBurst(), now, clientRejected));
+        Quota quota = client.take(now);
+        return quota;
+    }
+
+    /**
+     * Gives back the token a client spent on a request that was turned down by a host's limit.
+     */
+    public void refund(String clientKey) {
+        if (!enabled) {
+            return;
+        }
+        TokenBucket client = clients.getIfPresent(clientKey);
+        if (client != null) {
+            client.refund();
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the url's host, to be called with the canonical url right
+     * before calling it.
+     *
+     * @throws TooManyRequestsException when the host's bucket is empty
+     */
+    public void acquireHost(String proxyUrl) {
+        if (!enabled) {
+            return;
+        }
+        long now = ticker.read();
+        String host = ProxyMetrics.host(proxyUrl);
+        Quota quota = hosts.get(host, key -> new TokenBucket(properties.getHostRate(), properties.getHostBurst(), now,
+                                                             rejectedCounter("host", proxyMetrics.hostTag(proxyUrl)))).take(now);
+        if (!quota.isAllowed()) {
+            throw new TooManyRequestsException("Rate limit of upstream host " + host + " exceeded, retry in " + quota.getResetSeconds() + "s",
+                                               Duration.ofSeconds(quota.getResetSeconds()));
+        }
+    }
+
+    // Registered along with the bucket, throttling a client costs no registry lookup
+    private Counter rejectedCounter(String scope, String hostTag) {
+        return proxyMetrics.getRegistry().counter("proxy.rate.limit.rejected", "scope", scope, "host", hostTag);
+    }
+
+    private static Cache<String, TokenBucket> buckets(RateLimitProperties properties, Ticker ticker) {
+        return Caffeine.newBuilder()
+                       .maximumSize(properties.getMaxKeys())
+                       .expireAfterAccess(properties.getIdleExpiry())
+                       .ticker(ticker)
+                       .build();
+    }
+
+    /**
+     * What is left of a bucket after a request: the burst size, the tokens remaining and how long
+     * until the bucket is full again, or until the next token when the request was rejected.
+     */
+    public static final class Quota {
+
+        static final Quota UNLIMITED = new Quota(-1, -1, 0, true);
+
+        private final int limit;
+        private final long remaining;
+        private final long resetNanos;
+        private final boolean allowed;
+
+        private Quota(int limit, long remaining, long resetNanos, boolean allowed) {
+            this.limit = limit;
+            this.remaining = remaining;
+            this.resetNanos = resetNanos;
+            this.allowed = allowed;
+        }
+
+        public boolean isLimited() {
+            return limit >= 0;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public long getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * Whole seconds until the bucket is full (allowed) or has a token again (rejected), rounded up.
+         */
+        public long getResetSeconds() {
+            return (resetNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * A token bucket kept as the time at which it will be full again (the generic cell rate
+     * algorithm): each token taken pushes that time one interval further, and a request is allowed
+     * as long as it stays within one burst of now. Rejections are counted on the bucket's counter.
+     */
+    static final class TokenBucket {
+
+        private final int burst;
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong fullAt;
+        private final Counter rejected;
+
+        TokenBucket(double rate, int burst, long now, Counter rejected) {
+            this.burst = Math.max(1, burst);
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            this.burstNanos = this.burst * intervalNanos;
+            this.fullAt = new AtomicLong(now);
+            this.rejected = rejected;
+        }
+
+        Quota take(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long debt = next - now;
+                if (debt > burstNanos) {
+                    rejected.increment();
+                    return new Quota(burst, 0, debt - burstNanos, false);
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return new Quota(burst, (burstNanos - debt) / intervalNanos, debt, true);
+                }
+            }
+        }
+
+        void refund() {
+            fullAt.addAndGet(-intervalNanos);
+        }
+    }
+}
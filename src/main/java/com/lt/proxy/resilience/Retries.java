@@ -0,0 +1,322 @@
+package com.lt.proxy.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lt.proxy.config.RetryProperties;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Retry and hedging policy for idempotent upstream GETs. Failed attempts (I/O errors, upstream
+ * 502/503/504) are retried with exponential backoff and full jitter, and hedged attempts are sent
+ * once the primary one has been running for the host's observed p95 latency, the first successful
+ * answer winning and the other attempt being aborted. Everything happens within a per-request
+ * deadline after which running attempts are aborted.
+ */
+@Component
+public class Retries {
+
+    private static final int LATENCY_SAMPLES = 128;
+
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long deadlineNanos;
+    private final boolean hedgeEnabled;
+    private final long hedgeMinDelayNanos;
+    private final int hedgeMinSamples;
+    private final Semaphore hedgesInFlight;
+    private final Cache<String, LatencyWindow> latencies;
+    private final ProxyMetrics proxyMetrics;
+    // Keyed by host tag, as many as the tag budget allows
+    private final ConcurrentMap<String, HostMeters> hostMeters = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService hedgeExecutor;
+
+    public Retries(RetryProperties properties, ProxyMetrics proxyMetrics) {
+        this.enabled = properties.isEnabled();
+        this.maxAttempts = Math.max(1, properties.getMaxAttempts());
+        this.initialBackoffNanos = properties.getInitialBackoff().toNanos();
+        this.maxBackoffNanos = properties.getMaxBackoff().toNanos();
+        this.deadlineNanos = properties.getDeadline().toNanos();
+        this.hedgeEnabled = properties.isHedgeEnabled();
+        this.hedgeMinDelayNanos = properties.getHedgeMinDelay().toNanos();
+        this.hedgeMinSamples = Math.min(LATENCY_SAMPLES, properties.getHedgeMinSamples());
+        this.hedgesInFlight = new Semaphore(properties.getHedgeMaxInFlight());
+        this.latencies = Caffeine.newBuilder().maximumSize(properties.getMaxHosts()).build();
+        this.proxyMetrics = proxyMetrics;
+        this.timer = new ScheduledThreadPoolExecutor(1, daemon("upstream-retry-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.hedgeExecutor = Executors.newCachedThreadPool(daemon("upstream-hedge"));
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdownNow();
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs the attempt until it succeeds, fails with a non-retryable error, runs out of attempts or
+     * of deadline. Results of hedged attempts that lost the race are handed to {@code discard}.
+     */
+    public <T> T execute(String proxyUrl, Supplier<T> attempt, Consumer<T> discard) {
+        if (!enabled) {
+            return attempt.get();
+        }
+        String host = ProxyMetrics.host(proxyUrl);
+        long deadline = System.nanoTime() + deadlineNanos;
+        for (int attempts = 1; ; attempts++) {
+            try {
+                return hedged(proxyUrl, host, attempt, discard, deadline);
+            } catch (RuntimeException e) {
+                long backoff = backoffNanos(attempts);
+                if (attempts >= maxAttempts || !isRetryable(e) || System.nanoTime() + backoff >= deadline) {
+                    throw e;
+                }
+                meters(proxyUrl).retries.increment();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    static boolean isRetryable(RuntimeException e) {
+        if (e instanceof ResourceAccessException) {
+            return true;
+        }
+        if (e instanceof HttpServerErrorException) {
+            HttpStatus status = ((HttpServerErrorException) e).getStatusCode();
+            return status == HttpStatus.BAD_GATEWAY || status == HttpStatus.SERVICE_UNAVAILABLE || status == HttpStatus.GATEWAY_TIMEOUT;
+        }
+        return false;
+    }
+
+    private long backoffNanos(int attempts) {
+        long cap = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempts - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Runs the primary attempt on the calling thread and, if it is still running after the hedge
+     * delay, a second one on the hedge executor.
+     */
+    private <T> T hedged(String proxyUrl, String host, Supplier<T> attempt, Consumer<T> discard, long deadline) {
+        Cancellation primary = new Cancellation();
+        long remaining = deadline - System.nanoTime();
+        long hedgeDelay = hedgeDelayNanos(host);
+        Race<T> race = hedgeDelay >= 0 && hedgeDelay < remaining ? new Race<>() : null;
+        ScheduledFuture<?> deadlineTimer = timer.schedule(() -> {
+            primary.cancel();
+            if (race != null) {
+                race.hedge.cancel();
+            }
+        }, remaining, TimeUnit.NANOSECONDS);
+        if (race != null) {
+            race.timer = timer.schedule(() -> startHedge(proxyUrl, host, attempt, discard, race, primary), hedgeDelay, TimeUnit.NANOSECONDS);
+        }
+        try {
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = primary.run(attempt);
+            } catch (RuntimeException e) {
+                if (race == null || !race.close()) {
+                    throw e;
+                }
+                // Aborted because the hedge won, or failed while the hedge is still running: the hedge decides
+                return race.awaitHedge();
+            }
+            if (race == null || race.decided.compareAndSet(false, true)) {
+                if (race != null) {
+                    race.close();
+                    race.hedge.cancel();
+                }
+                record(host, System.nanoTime() - start);
+                return result;
+            }
+            discard.accept(result);
+            return race.awaitHedge();
+        } finally {
+            deadlineTimer.cancel(false);
+        }
+    }
+
+    private <T> void startHedge(String proxyUrl, String host, Supplier<T> attempt, Consumer<T> discard, Race<T> race, Cancellation primary) {
+        if (!hedgesInFlight.tryAcquire()) {
+            return;
+        }
+        if (!race.start()) {
+            hedgesInFlight.release();
+            return;
+        }
+        HostMeters meters = meters(proxyUrl);
+        meters.hedges.increment();
+        hedgeExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                T result = race.hedge.run(attempt);
+                if (race.decided.compareAndSet(false, true)) {
+                    record(host, System.nanoTime() - start);
+                    meters.hedgesWon.increment();
+                    race.result.complete(result);
+                    primary.cancel();
+                } else {
+                    discard.accept(result);
+                }
+            } catch (RuntimeException | Error e) {
+                race.result.completeExceptionally(e);
+            } finally {
+                hedgesInFlight.release();
+            }
+        });
+    }
+
+    private long hedgeDelayNanos(String host) {
+        if (!hedgeEnabled) {
+            return -1;
+        }
+        LatencyWindow window = latencies.getIfPresent(host);
+        long p95 = window == null ? -1 : window.p95(hedgeMinSamples);
+        return p95 < 0 ? -1 : Math.max(hedgeMinDelayNanos, p95);
+    }
+
+    private void record(String host, long nanos) {
+        if (hedgeEnabled) {
+            latencies.get(host, h -> new LatencyWindow()).record(nanos);
+        }
+    }
+
+    private HostMeters meters(String proxyUrl) {
+        String host = proxyMetrics.hostTag(proxyUrl);
+        HostMeters meters = hostMeters.get(host);
+        return meters != null ? meters : hostMeters.computeIfAbsent(host, HostMeters::new);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Retry and hedge counters of one host tag, registered on first use.
+     */
+    private final class HostMeters {
+
+        private final Counter retries;
+        private final Counter hedges;
+        private final Counter hedgesWon;
+
+        private HostMeters(String host) {
+            MeterRegistry registry = proxyMetrics.getRegistry();
+            this.retries = registry.counter("proxy.upstream.retries", "host", host);
+            this.hedges = registry.counter("proxy.upstream.hedges", "host", host);
+            this.hedgesWon = registry.counter("proxy.upstream.hedges.won", "host", host);
+        }
+    }
+
+    /**
+     * State shared by the primary attempt and its hedge: whichever succeeds first flips
+     * {@code decided}, and a hedge can only start while the primary is still running.
+     */
+    private static final class Race<T> {
+
+        private final AtomicBoolean decided = new AtomicBoolean();
+        private final Cancellation hedge = new Cancellation();
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timer;
+        // Guarded by this
+        private boolean closed;
+        private boolean started;
+
+        synchronized boolean start() {
+            if (closed) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        /**
+         * Prevents the hedge from starting and returns whether it already did.
+         */
+        boolean close() {
+            ScheduledFuture<?> scheduled = timer;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            synchronized (this) {
+                closed = true;
+                return started;
+            }
+        }
+
+        T awaitHedge() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+    }
+
+    /**
+     * The last {@value #LATENCY_SAMPLES} successful attempt latencies of a host, with a p95 refreshed
+     * every 16 samples.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int count;
+        private int next;
+        private long p95 = -1;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            if (next % 16 == 0) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            }
+        }
+
+        synchronized long p95(int minSamples) {
+            return count >= minSamples ? p95 : -1;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.lt.proxy.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.cache.CachedResponse;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.AsyncProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.url.UrlPolicy;
+
+/**
+ * Non-blocking variant of {@link ProxyService#callUrl(String)}: the upstream call runs on the JDK
+ * {@link HttpClient} async API so no servlet thread is held while waiting for the upstream.
+ */
+@Service
+public class AsyncProxyService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncProxyService.class);
+    private static final String GZIP = "gzip";
+
+    private final HttpClient httpClient;
+    private final ResponseCache responseCache;
+    private final HeaderLogger headerLogger;
+    private final ProxyMetrics proxyMetrics;
+    private final CircuitBreakers circuitBreakers;
+    private final NegativeCache negativeCache;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final UrlPolicy urlPolicy;
+    private final RateLimiter rateLimiter;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Duration deadline;
+    private final int maxBodyBytes;
+
+    public AsyncProxyService(HttpClient asyncHttpClient,
+                             ResponseCache responseCache,
+                             HeaderLogger headerLogger,
+                             ProxyMetrics proxyMetrics,
+                             CircuitBreakers circuitBreakers,
+                             NegativeCache negativeCache,
+                             ConcurrencyLimiter concurrencyLimiter,
+                             UrlPolicy urlPolicy,
+                             RateLimiter rateLimiter,
+                             AsyncProperties properties) {
+        this.httpClient = asyncHttpClient;
+        this.responseCache = responseCache;
+        this.headerLogger = headerLogger;
+        this.proxyMetrics = proxyMetrics;
+        this.circuitBreakers = circuitBreakers;
+        this.negativeCache = negativeCache;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.urlPolicy = urlPolicy;
+        this.rateLimiter = rateLimiter;
+        this.maxInFlight = properties.getMaxInFlight();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.deadline = properties.getDeadline();
+        this.maxBodyBytes = (int) Math.min(Integer.MAX_VALUE - 8, properties.getMaxBodySize().toBytes());
+        proxyMetrics.getRegistry().gauge("proxy.async.in.flight", this, AsyncProxyService::inFlightCount);
+    }
+
+    public CompletableFuture<String> callUrl(String requestedUrl) {
+
+        String proxyUrl = urlPolicy.canonicalize(requestedUrl);
+        String key = proxyUrl;
+        RuntimeException missing = negativeCache.lookup(key);
+        if (missing != null) {
+            LOGGER.info("Serving {} from negative cache", proxyUrl);
+            throw missing;
+        }
+        CachedResponse cached = responseCache.lookup(key);
+        if (cached != null && responseCache.isFresh(cached)) {
+            LOGGER.info("Serving {} from cache", proxyUrl);
+            headerLogger.log(proxyUrl, cached.getHeaders());
+            proxyMetrics.bytesOut(ProxyBody.utf8Length(cached.getBody()));
+            return CompletableFuture.completedFuture(cached.getBody());
+        }
+
+        rateLimiter.acquireHost(proxyUrl);
+        CircuitBreakers.Call call = circuitBreakers.acquire(proxyUrl);
+        ConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiter.acquire(proxyUrl);
+        } catch (ServiceUnavailableException e) {
+            call.release();
+            throw e;
+        }
+        if (!inFlight.tryAcquire()) {
+            call.release();
+            permit.ignore();
+            throw new ServiceUnavailableException("Too many in-flight asynchronous requests, cannot proxy to: " + proxyUrl);
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        LOGGER.info("Executing asynchronous GET call to {} ....", proxyUrl);
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(proxyUrl))
+                                                     .timeout(deadline)
+                                                     .header(HttpHeaders.ACCEPT_ENCODING, GZIP)
+                                                     .GET();
+            if (cached != null) {
+                responseCache.revalidationHeaders(cached).forEach((name, values) -> values.forEach(value -> request.header(name, value)));
+            }
+            long start = proxyMetrics.upstreamStarted();
+            CompletableFuture<HttpResponse<ReceivedBody>> exchange = httpClient.sendAsync(request.build(), this::decodingBodySubscriber);
+            exchange.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((response, error) -> {
+                        inFlight.release();
+                        if (result.isCancelled()) {
+                            // The caller gave up on the call, which says nothing about the upstream
+                            call.release();
+                            permit.ignore();
+                            return;
+                        }
+                        if (error != null) {
+                            Exception cause = unwrap(error);
+                            call.failure(cause);
+                            permit.failure(cause);
+                            proxyMetrics.upstreamFailed(proxyUrl, cause, start);
+                            result.completeExceptionally(ProxyService.translate(cause, proxyUrl));
+                            return;
+                        }
+                        if (response.statusCode() >= 500) {
+                            call.failure(statusError(response.statusCode(), HttpStatus.resolve(response.statusCode())));
+                            permit.dropped();
+                        } else {
+                            call.success();
+                            permit.success();
+                        }
+                        proxyMetrics.upstreamCompleted(proxyUrl, response.statusCode(), response.body().bytes, start);
+                        try {
+                            result.complete(handle(response, proxyUrl, key, cached));
+                        } catch (RuntimeException e) {
+                            result.completeExceptionally(e);
+                        }
+                    });
+            // Cancelling the result aborts the exchange and frees its connection and in-flight slot
+            result.whenComplete((body, error) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            call.release();
+            permit.ignore();
+            throw ProxyService.translate(e, proxyUrl);
+        }
+        return result;
+    }
+
+    public int inFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    private String handle(HttpResponse<ReceivedBody> response, String proxyUrl, String key, CachedResponse cached) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        if (isGzip(response.headers())) {
+            // The body was decoded, as the pooled client does for /proxy
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+        headerLogger.log(proxyUrl, headers);
+
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        String body;
+        if (cached != null && status == HttpStatus.NOT_MODIFIED) {
+            body = responseCache.revalidated(key, cached, headers).getBody();
+        } else if (status == null || status.isError()) {
+            RuntimeException error = ProxyService.translate(statusError(response.statusCode(), status), proxyUrl);
+            negativeCache.store(key, response.statusCode(), error);
+            throw error;
+        } else {
+            body = response.body().text;
+            responseCache.store(key, status, headers, body);
+        }
+        proxyMetrics.bytesOut(ProxyBody.utf8Length(body));
+        return body;
+    }
+
+    /**
+     * Reads the body as a string like {@code BodyHandlers.ofString()}, first decoding it when the
+     * upstream answered the {@code Accept-Encoding: gzip} request with a gzip body. Both the
+     * received and the decoded body are capped at {@code proxy.async.max-body-size}, so neither a
+     * huge body nor a gzip bomb can exhaust the heap.
+     */
+    private HttpResponse.BodySubscriber<ReceivedBody> decodingBodySubscriber(HttpResponse.ResponseInfo info) {
+        boolean gzip = isGzip(info.headers());
+        Charset charset = charset(info.headers());
+        return HttpResponse.BodySubscribers.mapping(
+            new BoundedBodySubscriber(maxBodyBytes),
+            bytes -> new ReceivedBody(new String(gzip ? gunzip(bytes, maxBodyBytes) : bytes, charset), bytes.length)
+        );
+    }
+
+    private static boolean isGzip(java.net.http.HttpHeaders headers) {
+        return headers.firstValue(HttpHeaders.CONTENT_ENCODING).map(encoding -> GZIP.equalsIgnoreCase(encoding.trim())).orElse(false);
+    }
+
+    private static Charset charset(java.net.http.HttpHeaders headers) {
+        try {
+            Charset charset = headers.firstValue(HttpHeaders.CONTENT_TYPE).map(MediaType::parseMediaType).map(MediaType::getCharset).orElse(null);
+            return charset != null ? charset : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static byte[] gunzip(byte[] bytes, int maxBytes) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] decoded = in.readNBytes(maxBytes + 1);
+            if (decoded.length > maxBytes) {
+                throw tooLarge(maxBytes);
+            }
+            return decoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static IOException tooLarge(int maxBytes) {
+        return new IOException("Upstream body larger than " + maxBytes + " bytes");
+    }
+
+    private static Exception statusError(int statusCode, HttpStatus status) {
+        if (status == null) {
+            return new IllegalStateException("Unknown upstream status code: " + statusCode);
+        }
+        return status.is4xxClientError() ? new HttpClientErrorException(status) : new HttpServerErrorException(status);
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception ? (Exception) cause : new CompletionException(cause);
+    }
+
+    /**
+     * The body text together with the number of bytes received for it, before any decoding.
+     */
+    private static final class ReceivedBody {
+
+        private final String text;
+        private final long bytes;
+
+        private ReceivedBody(String text, long bytes) {
+            this.text = text;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Collects the body like {@code BodySubscribers.ofByteArray()}, but cancels the exchange and
+     * fails once more than {@code maxBytes} arrived instead of buffering all of it.
+     */
+    private static final class BoundedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+
+        private final int maxBytes;
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private long size;
+
+        private BoundedBodySubscriber(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                size += item.remaining();
+                buffers.add(item);
+            }
+            if (size > maxBytes) {
+                buffers.clear();
+                subscription.cancel();
+                body.completeExceptionally(tooLarge(maxBytes));
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            buffers.clear();
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            byte[] bytes = new byte[(int) size];
+            int offset = 0;
+            for (ByteBuffer buffer : buffers) {
+                int length = buffer.remaining();
+                buffer.get(bytes, offset, length);
+                offset += length;
+            }
+            buffers.clear();
+            body.complete(bytes);
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+    }
+}
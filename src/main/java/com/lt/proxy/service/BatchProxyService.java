@@ -0,0 +1,165 @@
+package com.lt.proxy.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import com.lt.proxy.config.BatchProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.metrics.ProxyMetrics;
+
+/**
+ * Fans a batch of urls out over {@link AsyncProxyService}, at most {@code proxy.batch.concurrency}
+ * at a time, and reports every result to the listener as soon as it is known, so that one slow
+ * upstream does not hold back the others.
+ */
+@Service
+public class BatchProxyService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchProxyService.class);
+
+    private final AsyncProxyService asyncProxyService;
+    private final ProxyMetrics proxyMetrics;
+    private final int maxUrls;
+    private final int concurrency;
+    private final Duration deadline;
+
+    public BatchProxyService(AsyncProxyService asyncProxyService, ProxyMetrics proxyMetrics, BatchProperties properties) {
+        this.asyncProxyService = asyncProxyService;
+        this.proxyMetrics = proxyMetrics;
+        this.maxUrls = properties.getMaxUrls();
+        this.concurrency = Math.max(1, properties.getConcurrency());
+        this.deadline = properties.getDeadline();
+    }
+
+    /**
+     * Calls every url, passing each result to the listener exactly once and never concurrently.
+     * The returned future completes once every url has a result, or exceptionally when the listener
+     * fails (typically because the client went away), after which no more upstream calls are made.
+     * Calls still running when the batch ends, at its deadline or on a listener failure, are cancelled.
+     */
+    public CompletableFuture<Void> callUrls(List<String> proxyUrls, Consumer<BatchResult> listener) {
+        if (proxyUrls.size() > maxUrls) {
+            throw new ProxyException(
+                String.format("Cannot proxy a batch of %d urls, at most %d are accepted", proxyUrls.size(), maxUrls),
+                null,
+                false
+            );
+        }
+        LOGGER.info("Executing batch of {} GET calls ....", proxyUrls.size());
+        Batch batch = new Batch(proxyUrls, listener);
+        batch.start();
+        return batch.done;
+    }
+
+    private final class Batch {
+
+        private final List<String> urls;
+        private final Consumer<BatchResult> listener;
+        private final boolean[] reported;
+        private final AtomicReferenceArray<CompletableFuture<String>> calls;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private int remaining;
+        private volatile boolean expired;
+
+        private Batch(List<String> urls, Consumer<BatchResult> listener) {
+            this.urls = urls;
+            this.listener = listener;
+            this.reported = new boolean[urls.size()];
+            this.calls = new AtomicReferenceArray<>(urls.size());
+            this.remaining = urls.size();
+        }
+
+        private void start() {
+            if (urls.isEmpty()) {
+                done.complete(null);
+                return;
+            }
+            CompletableFuture.delayedExecutor(deadline.toMillis(), TimeUnit.MILLISECONDS).execute(this::expire);
+            for (int i = 0; i < Math.min(concurrency, urls.size()); i++) {
+                callNext();
+            }
+        }
+
+        private void callNext() {
+            int index = next.getAndIncrement();
+            if (index >= urls.size() || isOver()) {
+                return;
+            }
+            String url = urls.get(index);
+            CompletableFuture<String> call;
+            try {
+                call = asyncProxyService.callUrl(url);
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls.set(index, call);
+            if (isOver()) {
+                // The batch ended while this call was being started
+                call.cancel(true);
+                return;
+            }
+            call.whenComplete((body, error) -> {
+                if (!isOver()) {
+                    report(index, error == null ? BatchResult.success(url, body) : failure(url, error));
+                }
+                callNext();
+            });
+        }
+
+        private BatchResult failure(String url, Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            proxyMetrics.error(cause.getClass());
+            return BatchResult.failure(url, cause);
+        }
+
+        private synchronized void report(int index, BatchResult result) {
+            if (done.isDone() || reported[index]) {
+                return;
+            }
+            reported[index] = true;
+            try {
+                listener.accept(result);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                cancelOutstanding();
+                return;
+            }
+            if (--remaining == 0) {
+                done.complete(null);
+            }
+        }
+
+        private boolean isOver() {
+            return expired || done.isDone();
+        }
+
+        private synchronized void expire() {
+            // Cancelled calls are reported below as timed out, not as failures
+            expired = true;
+            cancelOutstanding();
+            for (int index = 0; index < urls.size() && !done.isDone(); index++) {
+                if (!reported[index]) {
+                    report(index, BatchResult.deadlineExceeded(urls.get(index)));
+                }
+            }
+        }
+
+        private void cancelOutstanding() {
+            for (int index = 0; index < urls.size(); index++) {
+                CompletableFuture<String> call = calls.get(index);
+                if (call != null && !call.isDone()) {
+                    call.cancel(true);
+                }
+            }
+        }
+    }
+}
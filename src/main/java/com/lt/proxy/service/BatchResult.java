@@ -0,0 +1,73 @@
+package com.lt.proxy.service;
+
+import org.springframework.http.HttpStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ResourceNotFoundException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.exception.TooManyRequestsException;
+
+/**
+ * Outcome of one url of a batch, written as one NDJSON line: the body on success, otherwise the
+ * status and error message {@code GET /proxy} would have answered with.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class BatchResult {
+
+    private final String url;
+    private final int status;
+    private final String body;
+    private final String errorMessage;
+
+    private BatchResult(String url, HttpStatus status, String body, String errorMessage) {
+        this.url = url;
+        this.status = status.value();
+        this.body = body;
+        this.errorMessage = errorMessage;
+    }
+
+    static BatchResult success(String url, String body) {
+        return new BatchResult(url, HttpStatus.OK, body, null);
+    }
+
+    static BatchResult failure(String url, Throwable error) {
+        return new BatchResult(url, status(error), null, error.getMessage());
+    }
+
+    static BatchResult deadlineExceeded(String url) {
+        return new BatchResult(url, HttpStatus.GATEWAY_TIMEOUT, null, "Batch deadline exceeded before an answer from: " + url);
+    }
+
+    // Same mapping as ProxyControllerExceptionHandler
+    private static HttpStatus status(Throwable error) {
+        if (error instanceof ResourceNotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (error instanceof ProxyException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        if (error instanceof ServiceUnavailableException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if (error instanceof TooManyRequestsException) {
+            return HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -1,68 +1,274 @@
 package com.lt.proxy.service;
 
-import java.util.stream.Collectors;
+import java.io.OutputStream;
+import java.net.URI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.cache.CachedResponse;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
 import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.Cancellation;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.resilience.Retries;
+import com.lt.proxy.timing.RequestTiming;
 import com.lt.proxy.exception.ResourceNotFoundException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.url.UrlPolicy;
 
 @Service
 public class ProxyService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProxyService.class);
-    private static final String HTTP_PROTOCOL_PREFIX = "http://";
 
     private final RestTemplate restTemplate;
+    private final RestTemplate streamingRestTemplate;
+    private final StreamCopier streamCopier;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final HeaderLogger headerLogger;
+    private final ProxyMetrics proxyMetrics;
+    private final CircuitBreakers circuitBreakers;
+    private final NegativeCache negativeCache;
+    private final Retries retries;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final UrlPolicy urlPolicy;
+    private final RateLimiter rateLimiter;
 
-    public ProxyService(RestTemplate restTemplate) {
+    public ProxyService(RestTemplate restTemplate,
+                        @Qualifier("streamingRestTemplate") RestTemplate streamingRestTemplate,
+                        StreamCopier streamCopier,
+                        ResponseCache responseCache,
+                        RequestCoalescer requestCoalescer,
+                        HeaderLogger headerLogger,
+                        ProxyMetrics proxyMetrics,
+                        CircuitBreakers circuitBreakers,
+                        NegativeCache negativeCache,
+                        Retries retries,
+                        ConcurrencyLimiter concurrencyLimiter,
+                        UrlPolicy urlPolicy,
+                        RateLimiter rateLimiter) {
         this.restTemplate = restTemplate;
+        this.streamingRestTemplate = streamingRestTemplate;
+        this.streamCopier = streamCopier;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.headerLogger = headerLogger;
+        this.proxyMetrics = proxyMetrics;
+        this.circuitBreakers = circuitBreakers;
+        this.negativeCache = negativeCache;
+        this.retries = retries;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.urlPolicy = urlPolicy;
+        this.rateLimiter = rateLimiter;
     }
 
-    public String callUrl(String proxyUrl) {
+    /**
+     * Proxies a GET call to the canonical form of the url, answering from the cache when possible.
+     * A body too large to be held in memory comes back spilled to disk. The caller must
+     * {@link ProxyBody#release() release} every body once written, giving back its temp file or its
+     * share of the buffer memory budget.
+     */
+    public ProxyBody callUrl(String requestedUrl) {
 
-        if (!proxyUrl.startsWith(HTTP_PROTOCOL_PREFIX)) {
-            throw new ProxyException(
-                String.format(
-                    "Cannot proxy to %s. Only HTTP protocol URI are accepted. Proxy URL must start with: %s",
-                    proxyUrl,
-                    HTTP_PROTOCOL_PREFIX
-                )
-            );
+        String proxyUrl = urlPolicy.canonicalize(requestedUrl);
+        // Equivalent spellings of a url share their cache entry and in-flight call
+        String key = proxyUrl;
+        RuntimeException missing = negativeCache.lookup(key);
+        if (missing != null) {
+            LOGGER.info("Serving {} from negative cache", proxyUrl);
+            throw missing;
+        }
+        CachedResponse cached = responseCache.lookup(key);
+        if (cached != null && responseCache.isFresh(cached)) {
+            LOGGER.info("Serving {} from cache", proxyUrl);
+            headerLogger.log(proxyUrl, cached.getHeaders());
+            proxyMetrics.bytesOut(ProxyBody.utf8Length(cached.getBody()));
+            return ProxyBody.of(cached.getBody());
         }
 
-        HttpEntity<String> response;
-        LOGGER.info("Executing GET call to {} ....", proxyUrl);
+        boolean[] led = new boolean[1];
+        ProxyBody body = requestCoalescer.execute(key, () -> {
+            led[0] = true;
+            return fetch(proxyUrl, key, cached);
+        });
+        if (!led[0] && !body.retain()) {
+            // The leading request already released its spilled body, it cannot be shared anymore
+            body = fetch(proxyUrl, key, cached);
+        }
+        proxyMetrics.bytesOut(body.size());
+        return body;
+    }
+
+    /**
+     * Streams the upstream body to the sink as received. The client's {@code Accept-Encoding} is
+     * forwarded and the body is not decoded, so a compressed upstream answer reaches the sink with
+     * its {@code Content-Encoding} header and compressed bytes. A failure once the sink is open is
+     * rethrown as is, the response being already committed.
+     */
+    public void streamUrl(String requestedUrl, String acceptEncoding, ResponseSink sink) {
+
+        String proxyUrl = urlPolicy.canonicalize(requestedUrl);
+        rateLimiter.acquireHost(proxyUrl);
+
+        LOGGER.info("Executing streaming GET call to {} ....", proxyUrl);
+        CircuitBreakers.Call call = circuitBreakers.acquire(proxyUrl);
+        ConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiter.acquire(proxyUrl);
+        } catch (ServiceUnavailableException e) {
+            call.release();
+            throw e;
+        }
+        long start = proxyMetrics.upstreamStarted();
+        boolean[] opened = new boolean[1];
+        try {
+            streamingRestTemplate.execute(URI.create(proxyUrl), HttpMethod.GET, acceptEncodingCallback(acceptEncoding), response -> {
+                permit.responded();
+                HttpHeaders headers = response.getHeaders();
+                headerLogger.log(proxyUrl, headers);
+                OutputStream out = sink.open(response.getStatusCode(), headers);
+                opened[0] = true;
+                long bodyStart = System.nanoTime();
+                long copied = streamCopier.copy(response.getBody(), out);
+                RequestTiming.record(RequestTiming.Phase.BODY, bodyStart);
+                call.success();
+                permit.success();
+                proxyMetrics.upstreamCompleted(proxyUrl, response.getRawStatusCode(), copied, start);
+                proxyMetrics.bytesOut(copied);
+                return copied;
+            });
+        } catch (Exception e) {
+            permit.failure(e);
+            proxyMetrics.upstreamFailed(proxyUrl, e, start);
+            if (opened[0]) {
+                // The upstream answered, a failure while copying the body is mostly the client going away
+                call.success();
+                throw e;
+            }
+            call.failure(e);
+            throw translate(e, proxyUrl);
+        }
+    }
+
+    private ProxyBody fetch(String proxyUrl, String key, CachedResponse cached) {
+
+        rateLimiter.acquireHost(proxyUrl);
+        HttpHeaders requestHeaders = cached != null ? responseCache.revalidationHeaders(cached) : new HttpHeaders();
+        ResponseEntity<ProxyBody> response;
         try {
-            response = restTemplate.exchange(proxyUrl, HttpMethod.GET, null, String.class);
+            response = retries.execute(proxyUrl, () -> attempt(proxyUrl, requestHeaders), ProxyService::discard);
+        } catch (ServiceUnavailableException e) {
+            // Rejected by a circuit breaker or the concurrency limiter, answered as is
+            throw e;
         } catch (Exception e) {
+            RuntimeException error = translate(e, proxyUrl);
             if (e instanceof HttpClientErrorException) {
-                if (((HttpClientErrorException) e).getStatusCode().equals(HttpStatus.NOT_FOUND)) {
-                    throw new ResourceNotFoundException("Could not found: " + proxyUrl, e);
-                }
+                negativeCache.store(key, ((HttpClientErrorException) e).getRawStatusCode(), error);
             }
-            throw new ProxyException("Unexpected error when Executing GET call to: " + proxyUrl, e);
+            throw error;
         }
-        HttpHeaders headers = response.getHeaders();
-        LOGGER.info(
-            "\n" +
-            "==================================\n" +
-            "Response Headers (proxy url: {})\n" +
-            "==================================\n" +
-            headers.entrySet()
-                   .stream()
-                   .map(e -> e.getKey() + " :: " + e.getValue())
-                   .sorted()
-                   .collect(Collectors.joining("\n")),
-            proxyUrl
-        );
+        headerLogger.log(proxyUrl, response.getHeaders());
 
-        return response.getBody();
+        if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            return ProxyBody.of(responseCache.revalidated(key, cached, response.getHeaders()).getBody());
+        }
+        ProxyBody body = response.getBody();
+        // Spilled bodies have no text and are never cached
+        responseCache.store(key, response.getStatusCode(), response.getHeaders(), body != null ? body.getText() : null);
+
+        return body != null ? body : ProxyBody.of("");
+    }
+
+    /**
+     * One upstream call, guarded by the host's circuit breaker and holding its own concurrency
+     * limit slot, so the limiter samples the round-trip time of single attempts rather than of
+     * retries and their backoff. An attempt cancelled by the retry policy (lost hedge race, spent
+     * deadline) says nothing about the upstream and is not counted.
+     */
+    private ResponseEntity<ProxyBody> attempt(String proxyUrl, HttpHeaders requestHeaders) {
+        LOGGER.info("Executing GET call to {} ....", proxyUrl);
+        CircuitBreakers.Call call = circuitBreakers.acquire(proxyUrl);
+        ConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiter.acquire(proxyUrl);
+        } catch (ServiceUnavailableException e) {
+            call.release();
+            throw e;
+        }
+        long start = proxyMetrics.upstreamStarted();
+        try {
+            ResponseEntity<ProxyBody> response =
+                restTemplate.exchange(URI.create(proxyUrl), HttpMethod.GET, requestEntity(requestHeaders), ProxyBody.class);
+            call.success();
+            permit.success();
+            proxyMetrics.upstreamCompleted(proxyUrl, response.getStatusCodeValue(), bodySize(response), start);
+            return response;
+        } catch (RuntimeException e) {
+            if (Cancellation.isCurrentCancelled()) {
+                call.release();
+                permit.ignore();
+            } else {
+                call.failure(e);
+                permit.failure(e);
+            }
+            proxyMetrics.upstreamFailed(proxyUrl, e, start);
+            throw e;
+        }
+    }
+
+    private static void discard(ResponseEntity<ProxyBody> response) {
+        if (response.getBody() != null) {
+            response.getBody().release();
+        }
+    }
+
+    private static long bodySize(ResponseEntity<ProxyBody> response) {
+        long contentLength = response.getHeaders().getContentLength();
+        if (contentLength >= 0) {
+            return contentLength;
+        }
+        return response.getBody() != null ? response.getBody().size() : 0;
+    }
+
+    private static RequestCallback acceptEncodingCallback(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        return request -> request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+
+    private static HttpEntity<Void> requestEntity(HttpHeaders requestHeaders) {
+        return requestHeaders.isEmpty() ? null : new HttpEntity<>(requestHeaders);
+    }
+
+    static RuntimeException translate(Exception e, String proxyUrl) {
+        if (e instanceof HttpClientErrorException) {
+            if (((HttpClientErrorException) e).getStatusCode().equals(HttpStatus.NOT_FOUND)) {
+                return new ResourceNotFoundException("Could not found: " + proxyUrl, e);
+            }
+        }
+        // An upstream status is a known outcome, only I/O and unexpected failures keep their stack trace
+        return new ProxyException(
+            "Unexpected error when Executing GET call to: " + proxyUrl,
+            e,
+            !(e instanceof HttpStatusCodeException)
+        );
     }
 }
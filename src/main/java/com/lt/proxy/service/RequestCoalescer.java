@@ -0,0 +1,100 @@
+package com.lt.proxy.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+
+/**
+ * Single-flight execution: concurrent calls for the same key share the result (or failure)
+ * of the one call that is actually executed.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final boolean enabled;
+    private final int maxWaiters;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RequestCoalescer(CoalescingProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.maxWaiters = properties.getMaxWaiters();
+    }
+
+    public <T> T execute(String key, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            return lead(key, flight, call);
+        }
+        return await(key, existing);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("inFlight", flights.size());
+        map.put("executed", executed.sum());
+        map.put("coalesced", coalesced.sum());
+        map.put("rejected", rejected.sum());
+        return map;
+    }
+
+    private <T> T lead(String key, Flight flight, Supplier<T> call) {
+        executed.increment();
+        try {
+            T result = call.get();
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(String key, Flight flight) {
+        if (flight.waiters.incrementAndGet() > maxWaiters) {
+            flight.waiters.decrementAndGet();
+            rejected.increment();
+            throw new ServiceUnavailableException("Too many concurrent requests waiting for: " + key);
+        }
+        coalesced.increment();
+        try {
+            return (T) flight.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            flight.waiters.decrementAndGet();
+        }
+    }
+
+    private static final class Flight {
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+}
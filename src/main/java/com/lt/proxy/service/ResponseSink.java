@@ -0,0 +1,16 @@
+package com.lt.proxy.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+@FunctionalInterface
+public interface ResponseSink {
+
+    /**
+     * Called once the upstream status and headers are known, before any body byte is read.
+     * Returns the stream the upstream body is copied to.
+     */
+    OutputStream open(HttpStatus status, HttpHeaders headers) throws IOException;
+}
@@ -0,0 +1,36 @@
+package com.lt.proxy.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class StreamCopier {
+
+    private final ThreadLocal<byte[]> buffers;
+
+    public StreamCopier(@Value("${proxy.stream.buffer-size:8192}") int bufferSize) {
+        this.buffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+    }
+
+    /**
+     * Copies {@code in} to {@code out} through a per-thread buffer, flushing whenever the
+     * input has nothing more buffered so the client sees bytes as soon as the upstream sends them.
+     */
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = buffers.get();
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+        return total;
+    }
+}
@@ -0,0 +1,155 @@
+package com.lt.proxy.timing;
+
+/**
+ * Where the time of the /proxy request handled by the current thread goes: upstream name
+ * resolution, connection setup, waiting for the upstream's first byte, body transfer and header
+ * logging. Components add to a phase with {@link #record(Phase, long)} from monotonic
+ * {@link System#nanoTime()} timestamps; each thread reuses one instance, so nothing is allocated
+ * while a request is timed. Work done on other threads (hedged attempts, /proxy/async) is not seen.
+ */
+public final class RequestTiming {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    public enum Phase {
+        DNS("dns"),
+        CONNECT("connect"),
+        UPSTREAM("upstream"),
+        BODY("body"),
+        HEADERS("headers");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<RequestTiming> CURRENT = ThreadLocal.withInitial(RequestTiming::new);
+
+    private final long[] phaseNanos = new long[PHASES.length];
+    private long startNanos;
+    private long stopNanos;
+    private boolean active;
+    private boolean setupUntimed;
+
+    RequestTiming() {
+    }
+
+    /**
+     * Starts timing a new request on this thread.
+     */
+    public static RequestTiming start() {
+        RequestTiming timing = CURRENT.get();
+        for (int i = 0; i < timing.phaseNanos.length; i++) {
+            timing.phaseNanos[i] = 0;
+        }
+        timing.startNanos = System.nanoTime();
+        timing.setupUntimed = false;
+        timing.active = true;
+        return timing;
+    }
+
+    /**
+     * Timing of this thread's request, inactive when none is being timed.
+     */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Adds the time since {@code startNanos} to the phase of this thread's request, if timed.
+     */
+    public static void record(Phase phase, long startNanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing.active) {
+            timing.phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Notes that this thread's request called an upstream through a client that resolves and
+     * connects on its own, so that the {@link Phase#UPSTREAM upstream} phase may include that time.
+     */
+    public static void recordSetupUntimed() {
+        RequestTiming timing = CURRENT.get();
+        if (timing.active) {
+            timing.setupUntimed = true;
+        }
+    }
+
+    public void stop() {
+        if (active) {
+            stopNanos = System.nanoTime();
+            active = false;
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Time spent resolving and connecting to upstreams so far.
+     */
+    public long getSetupNanos() {
+        return getNanos(Phase.DNS) + getNanos(Phase.CONNECT);
+    }
+
+    /**
+     * Time since the request started, up to now or to when it was stopped.
+     */
+    public long getElapsedNanos() {
+        return (active ? System.nanoTime() : stopNanos) - startNanos;
+    }
+
+    long[] copyPhaseNanos() {
+        return phaseNanos.clone();
+    }
+
+    public boolean isSetupUntimed() {
+        return setupUntimed;
+    }
+
+    /**
+     * Value of a {@code Server-Timing} header listing the phases that took any time and the total
+     * so far, in milliseconds, or {@code null} when the request is not timed. An upstream phase
+     * that may include name resolution and connection setup says so in its description.
+     */
+    public String serverTiming() {
+        if (!active) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos > 0) {
+                appendMetric(header, phase.metric, nanos);
+                if (phase == Phase.UPSTREAM && setupUntimed) {
+                    header.append(";desc=\"incl. dns and connect\"");
+                }
+                header.append(", ");
+            }
+        }
+        return appendMetric(header, "total", getElapsedNanos()).toString();
+    }
+
+    private static StringBuilder appendMetric(StringBuilder header, String name, long nanos) {
+        long micros = nanos / 1_000;
+        long fraction = micros % 1_000;
+        header.append(name).append(";dur=").append(micros / 1_000).append('.');
+        if (fraction < 100) {
+            header.append(fraction < 10 ? "00" : "0");
+        }
+        return header.append(fraction);
+    }
+}
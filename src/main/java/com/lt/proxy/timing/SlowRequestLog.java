@@ -0,0 +1,105 @@
+package com.lt.proxy.timing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.TimingProperties;
+
+/**
+ * Ring buffer of the most recent requests slower than {@code proxy.timing.slow-threshold}, with
+ * their per-phase timing. Faster requests are only compared against the threshold, so keeping the
+ * log costs nothing on the fast path.
+ */
+@Component
+public class SlowRequestLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowRequestLog.class);
+
+    private final long thresholdNanos;
+    private final AtomicReferenceArray<SlowRequest> entries;
+    private final AtomicLong recorded = new AtomicLong();
+
+    public SlowRequestLog(TimingProperties properties) {
+        this.thresholdNanos = properties.getSlowThreshold().toNanos();
+        this.entries = new AtomicReferenceArray<>(Math.max(1, properties.getSlowLogSize()));
+    }
+
+    public void record(String path, String proxyUrl, int status, RequestTiming timing) {
+        long elapsedNanos = timing.getElapsedNanos();
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        SlowRequest request = new SlowRequest(Instant.now(), path, proxyUrl, status, elapsedNanos, timing.copyPhaseNanos());
+        entries.set((int) (recorded.getAndIncrement() % entries.length()), request);
+        LOGGER.warn("Slow request {} {} answered {} in {}ms", path, proxyUrl, status, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    /**
+     * The requests kept, slowest first.
+     */
+    public Map<String, Object> stats() {
+        List<SlowRequest> kept = new ArrayList<>(entries.length());
+        for (int i = 0; i < entries.length(); i++) {
+            SlowRequest request = entries.get(i);
+            if (request != null) {
+                kept.add(request);
+            }
+        }
+        kept.sort(Comparator.comparingLong((SlowRequest request) -> request.elapsedNanos).reversed());
+
+        List<Map<String, Object>> requests = new ArrayList<>(kept.size());
+        kept.forEach(request -> requests.add(request.toMap()));
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("thresholdMillis", TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+        map.put("recorded", recorded.get());
+        map.put("requests", requests);
+        return map;
+    }
+
+    private static final class SlowRequest {
+
+        private final Instant time;
+        private final String path;
+        private final String proxyUrl;
+        private final int status;
+        private final long elapsedNanos;
+        private final long[] phaseNanos;
+
+        private SlowRequest(Instant time, String path, String proxyUrl, int status, long elapsedNanos, long[] phaseNanos) {
+            this.time = time;
+            this.path = path;
+            this.proxyUrl = proxyUrl;
+            this.status = status;
+            this.elapsedNanos = elapsedNanos;
+            this.phaseNanos = phaseNanos;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> phases = new LinkedHashMap<>();
+            for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+                phases.put(phase.getMetric(), millis(phaseNanos[phase.ordinal()]));
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("time", time.toString());
+            map.put("path", path);
+            map.put("proxyUrl", proxyUrl);
+            map.put("status", status);
+            map.put("totalMillis", millis(elapsedNanos));
+            map.put("phasesMillis", phases);
+            return map;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000L / 1_000.0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.lt.proxy.timing;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Plain socket factory recording how long opening upstream connections takes as the
+ * {@link RequestTiming.Phase#CONNECT connect} phase.
+ */
+public class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+
+    @Override
+    public Socket connectSocket(int connectTimeout,
+                                Socket socket,
+                                HttpHost host,
+                                InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress,
+                                HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        } finally {
+            RequestTiming.record(RequestTiming.Phase.CONNECT, start);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.lt.proxy.timing;
+
+import java.io.IOException;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Records the time from sending an upstream request to receiving its response headers as the
+ * {@link RequestTiming.Phase#UPSTREAM upstream} phase, leaving out the name resolution and
+ * connection setup recorded meanwhile.
+ */
+public class UpstreamTimingInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        RequestTiming timing = RequestTiming.current();
+        long setupNanos = timing.getSetupNanos();
+        long start = System.nanoTime();
+        try {
+            return execution.execute(request, body);
+        } finally {
+            // Moving the start forward by the setup time keeps it out of the upstream phase
+            RequestTiming.record(RequestTiming.Phase.UPSTREAM, start + timing.getSetupNanos() - setupNanos);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.lt.proxy.upstream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import com.lt.proxy.resilience.Cancellation;
+import com.lt.proxy.timing.RequestTiming;
+
+/**
+ * RestTemplate requests sent with the JDK {@link HttpClient}, which multiplexes concurrent requests
+ * to a host over a single HTTP/2 connection when the client is configured for HTTP/2. Like the
+ * pooled client, it asks for gzip and hands the decoded body over, waits at most the read timeout
+ * for the headers and for each body read, and requests can be aborted through {@link Cancellation}.
+ *
+ * <p>The JDK client resolves names and opens connections on its own: calls through it bypass the
+ * upstream pool, its limits and stats and the DNS cache, and record no {@code dns} or
+ * {@code connect} phase, that time being part of the {@code upstream} one, as its
+ * {@code Server-Timing} description says.
+ */
+public class JdkClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private static final String GZIP = "gzip";
+    // Set by the JDK client itself, which refuses them on requests
+    private static final Set<String> RESTRICTED_HEADERS =
+        Set.of("connection", "content-length", "date", "expect", "from", "host", "origin", "referer", "upgrade", "via", "warning");
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+
+    public JdkClientHttpRequestFactory(HttpClient httpClient, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new JdkClientHttpRequest(uri, httpMethod);
+    }
+
+    private final class JdkClientHttpRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream bufferedOutput = new ByteArrayOutputStream(0);
+
+        private JdkClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getMethodValue() {
+            return method.name();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return bufferedOutput;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                                                     .timeout(readTimeout)
+                                                     .method(method.name(), bufferedOutput.size() == 0
+                                                         ? HttpRequest.BodyPublishers.noBody()
+                                                         : HttpRequest.BodyPublishers.ofByteArray(bufferedOutput.toByteArray()));
+            headers.forEach((name, values) -> {
+                if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    values.forEach(value -> request.header(name, value));
+                }
+            });
+            if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+                request.header(HttpHeaders.ACCEPT_ENCODING, GZIP);
+            }
+
+            RequestTiming.recordSetupUntimed();
+            // Created up front, it is the handle to close whether or not the headers arrived yet
+            ResponseBody body = new ResponseBody(readTimeout);
+            CompletableFuture<HttpResponse<InputStream>> sent = httpClient.sendAsync(request.build(), responseInfo -> body);
+            Cancellation.register(() -> {
+                sent.cancel(true);
+                body.close();
+            });
+            try {
+                return new JdkClientHttpResponse(sent.get());
+            } catch (CancellationException e) {
+                throw new InterruptedIOException("Request aborted");
+            } catch (InterruptedException e) {
+                sent.cancel(true);
+                body.close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + uri);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Response body read as it arrives, where each read waits at most the read timeout for more
+     * bytes, as the socket timeout of the pooled client does. Closing it, from any thread, cancels
+     * the subscription, which aborts the exchange, and wakes up a read in progress.
+     */
+    private static final class ResponseBody extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+
+        // A distinct instance: the client may deliver empty lists
+        private static final List<ByteBuffer> END = Collections.unmodifiableList(new ArrayList<>(0));
+
+        private final BlockingQueue<List<ByteBuffer>> received = new LinkedBlockingQueue<>();
+        private final long readTimeoutNanos;
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable failure;
+        private volatile boolean closed;
+        private Iterator<ByteBuffer> buffers = Collections.emptyIterator();
+        private ByteBuffer current;
+        private boolean ended;
+
+        private ResponseBody(Duration readTimeout) {
+            this.readTimeoutNanos = readTimeout.toNanos();
+        }
+
+        @Override
+        public CompletionStage<InputStream> getBody() {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            received.add(END);
+        }
+
+        @Override
+        public void onComplete() {
+            received.add(END);
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = current();
+            return buffer == null ? -1 : buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = current();
+            if (buffer == null) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return current != null ? current.remaining() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Flow.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+            received.add(END);
+        }
+
+        /**
+         * Buffer with bytes left to read, waiting for the next one when needed, or {@code null} at
+         * the end of the body.
+         */
+        private ByteBuffer current() throws IOException {
+            while (current == null || !current.hasRemaining()) {
+                if (closed) {
+                    throw new IOException("Response body closed");
+                }
+                if (buffers.hasNext()) {
+                    current = buffers.next();
+                    continue;
+                }
+                if (ended) {
+                    return null;
+                }
+                List<ByteBuffer> next;
+                try {
+                    next = received.poll(readTimeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    close();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading the response body");
+                }
+                if (next == null) {
+                    close();
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                if (next == END) {
+                    ended = true;
+                    if (failure != null && !closed) {
+                        throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+                    }
+                } else {
+                    buffers = next.iterator();
+                    subscription.request(1);
+                }
+            }
+            return current;
+        }
+    }
+
+    private static final class JdkClientHttpResponse extends AbstractClientHttpResponse {
+
+        private final HttpResponse<InputStream> response;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final boolean gzip;
+        private InputStream body;
+
+        private JdkClientHttpResponse(HttpResponse<InputStream> response) {
+            this.response = response;
+            response.headers().map().forEach(headers::addAll);
+            String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+            this.gzip = contentEncoding != null && GZIP.equalsIgnoreCase(contentEncoding.trim());
+            if (gzip) {
+                // The body is decoded, as the pooled client does
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+            }
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            HttpStatus status = HttpStatus.resolve(response.statusCode());
+            return status != null ? status.getReasonPhrase() : "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = gzip ? new GZIPInputStream(response.body()) : response.body();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(body != null ? body : response.body());
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
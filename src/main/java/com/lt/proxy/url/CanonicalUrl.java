@@ -0,0 +1,246 @@
+package com.lt.proxy.url;
+
+import java.nio.charset.StandardCharsets;
+import com.lt.proxy.exception.ProxyException;
+
+/**
+ * An http url in the canonical form used both as cache / in-flight key and for the upstream call.
+ * Equivalent spellings of a url (scheme and host case, explicit default port, empty path, dot
+ * segments, percent-encoded unreserved characters, lowercase hex digits, fragment) are reduced to
+ * the same string, and characters not allowed in a url are percent-encoded, in a single pass.
+ */
+public final class CanonicalUrl {
+
+    static final String HTTP_PROTOCOL_PREFIX = "http://";
+    private static final int DEFAULT_PORT = 80;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String url;
+    private final String host;
+
+    private CanonicalUrl(String url, String host) {
+        this.url = url;
+        this.host = host;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * The lowercase host, without port; IPv6 literals keep their brackets.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    /**
+     * @throws ProxyException when the url is not an absolute http url with a valid host
+     */
+    public static CanonicalUrl parse(String proxyUrl) {
+        if (!proxyUrl.regionMatches(true, 0, HTTP_PROTOCOL_PREFIX, 0, HTTP_PROTOCOL_PREFIX.length())) {
+            throw invalid(
+                proxyUrl,
+                "Only HTTP protocol URI are accepted. Proxy URL must start with: " + HTTP_PROTOCOL_PREFIX
+            );
+        }
+        int length = proxyUrl.length();
+        StringBuilder out = new StringBuilder(length + 8).append(HTTP_PROTOCOL_PREFIX);
+
+        int i = HTTP_PROTOCOL_PREFIX.length();
+        int hostStart = out.length();
+        i = host(proxyUrl, i, out);
+        String host = out.substring(hostStart);
+        i = port(proxyUrl, i, out);
+
+        int pathStart = out.length();
+        out.append('/');
+        if (i < length && proxyUrl.charAt(i) == '/') {
+            i = path(proxyUrl, i + 1, out, pathStart);
+        }
+        if (i < length && proxyUrl.charAt(i) == '?') {
+            out.append('?');
+            i = encoded(proxyUrl, i + 1, out, '#');
+        }
+        // Whatever is left is the fragment, which is never sent upstream
+        return new CanonicalUrl(out.toString(), host);
+    }
+
+    private static int host(String url, int i, StringBuilder out) {
+        int length = url.length();
+        int start = out.length();
+        if (i < length && url.charAt(i) == '[') {
+            int end = url.indexOf(']', i);
+            if (end < 0) {
+                throw invalid(url, "Unterminated IPv6 address");
+            }
+            out.append('[');
+            for (int j = i + 1; j < end; j++) {
+                char c = Character.toLowerCase(url.charAt(j));
+                if (!(isDigit(c) || (c >= 'a' && c <= 'f') || c == ':' || c == '.')) {
+                    throw invalid(url, "Invalid IPv6 address");
+                }
+                out.append(c);
+            }
+            out.append(']');
+            return end + 1;
+        }
+        boolean labelStart = true;
+        for (; i < length; i++) {
+            char c = url.charAt(i);
+            if (c == ':' || c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '.') {
+                if (labelStart) {
+                    throw invalid(url, "Empty host label");
+                }
+                labelStart = true;
+            } else if (isAlpha(c) || isDigit(c) || c == '-' || c == '_') {
+                labelStart = false;
+            } else if (c == '@') {
+                throw invalid(url, "User info is not accepted");
+            } else {
+                throw invalid(url, "Invalid character '" + c + "' in host");
+            }
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        if (out.length() == start) {
+            throw invalid(url, "Missing host");
+        }
+        // A single trailing dot names the same fully qualified host
+        if (out.charAt(out.length() - 1) == '.') {
+            out.setLength(out.length() - 1);
+            if (out.length() == start) {
+                throw invalid(url, "Missing host");
+            }
+        }
+        return i;
+    }
+
+    private static int port(String url, int i, StringBuilder out) {
+        int length = url.length();
+        if (i >= length || url.charAt(i) != ':') {
+            return i;
+        }
+        int port = 0;
+        boolean digits = false;
+        for (i++; i < length; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '@') {
+                throw invalid(url, "User info is not accepted");
+            }
+            if (!isDigit(c) || (port = port * 10 + (c - '0')) > 65535) {
+                throw invalid(url, "Invalid port");
+            }
+            digits = true;
+        }
+        if (digits && port != DEFAULT_PORT) {
+            out.append(':').append(port);
+        }
+        return i;
+    }
+
+    /**
+     * Copies the path after its leading slash, removing dot segments as each segment completes.
+     */
+    private static int path(String url, int i, StringBuilder out, int pathStart) {
+        int length = url.length();
+        int segmentStart = out.length();
+        while (true) {
+            i = encoded(url, i, out, '/');
+            boolean more = i < length && url.charAt(i) == '/';
+            int segmentLength = out.length() - segmentStart;
+            if (segmentLength == 1 && out.charAt(segmentStart) == '.') {
+                out.setLength(segmentStart);
+            } else if (segmentLength == 2 && out.charAt(segmentStart) == '.' && out.charAt(segmentStart + 1) == '.') {
+                out.setLength(segmentStart);
+                if (segmentStart > pathStart + 1) {
+                    out.setLength(out.lastIndexOf("/", segmentStart - 2) + 1);
+                }
+            } else if (more) {
+                out.append('/');
+            }
+            if (!more) {
+                return i;
+            }
+            i++;
+            segmentStart = out.length();
+        }
+    }
+
+    /**
+     * Copies path or query characters up to {@code stop}, {@code '?'} (in the path) or {@code '#'},
+     * normalizing percent-encoding and encoding characters not allowed in a url.
+     */
+    private static int encoded(String url, int i, StringBuilder out, char stop) {
+        int length = url.length();
+        while (i < length) {
+            char c = url.charAt(i);
+            if (c == stop || c == '#' || (c == '?' && stop == '/')) {
+                return i;
+            }
+            if (c == '%') {
+                int high = i + 2 < length ? Character.digit(url.charAt(i + 1), 16) : -1;
+                int low = high >= 0 ? Character.digit(url.charAt(i + 2), 16) : -1;
+                if (low < 0) {
+                    throw invalid(url, "Invalid percent-encoding");
+                }
+                char decoded = (char) (high << 4 | low);
+                if (isUnreserved(decoded)) {
+                    out.append(decoded);
+                } else {
+                    percentEncode(decoded, out);
+                }
+                i += 3;
+            } else if (c < 0x80) {
+                if (isAllowed(c)) {
+                    out.append(c);
+                } else {
+                    percentEncode(c, out);
+                }
+                i++;
+            } else {
+                int codePoint = url.codePointAt(i);
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                    percentEncode(b & 0xFF, out);
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+        return i;
+    }
+
+    private static void percentEncode(int b, StringBuilder out) {
+        out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return isAlpha(c) || isDigit(c) || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    // pchar and the '/' and '?' allowed in paths and queries (RFC 3986)
+    private static boolean isAllowed(char c) {
+        return isUnreserved(c) || "!$&'()*+,;=:@/?".indexOf(c) >= 0;
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static ProxyException invalid(String proxyUrl, String reason) {
+        return new ProxyException(String.format("Cannot proxy to %s. %s", proxyUrl, reason), null, false);
+    }
+}
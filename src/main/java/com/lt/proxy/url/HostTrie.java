@@ -0,0 +1,78 @@
+package com.lt.proxy.url;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Host patterns compiled into a trie of their labels, last label first, so a host is matched in a
+ * single right-to-left walk over its labels. A pattern is either an exact host
+ * ({@code example.com}) or a wildcard matching every subdomain ({@code *.example.com}); a lone
+ * {@code *} matches any host.
+ */
+final class HostTrie {
+
+    private final Node root = new Node();
+
+    HostTrie(Iterable<String> patterns) {
+        for (String pattern : patterns) {
+            add(pattern.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    boolean isEmpty() {
+        return root.children.isEmpty() && !root.wildcard;
+    }
+
+    /**
+     * @param host a lowercase host, as returned by {@link CanonicalUrl#getHost()}
+     */
+    boolean matches(String host) {
+        Node node = root;
+        boolean wildcard = root.wildcard;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            node = node.children.get(host.substring(dot + 1, end));
+            if (node == null) {
+                return wildcard;
+            }
+            if (dot < 0) {
+                return node.exact || wildcard;
+            }
+            wildcard |= node.wildcard;
+            end = dot;
+        }
+        return wildcard;
+    }
+
+    private void add(String pattern) {
+        if (pattern.endsWith(".")) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        boolean wildcard = pattern.equals("*") || pattern.startsWith("*.");
+        String labels = wildcard ? pattern.substring(Math.min(2, pattern.length())) : pattern;
+        Node node = root;
+        int end = labels.length();
+        while (end > 0) {
+            int dot = labels.lastIndexOf('.', end - 1);
+            node = node.children.computeIfAbsent(labels.substring(dot + 1, end), label -> new Node());
+            end = dot;
+        }
+        if (wildcard) {
+            node.wildcard = true;
+        } else {
+            node.exact = true;
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean exact;
+        private boolean wildcard;
+    }
+}
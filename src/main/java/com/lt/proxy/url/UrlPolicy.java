@@ -0,0 +1,36 @@
+package com.lt.proxy.url;
+
+import org.springframework.stereotype.Component;
+import com.lt.proxy.config.UrlPolicyProperties;
+import com.lt.proxy.exception.ProxyException;
+
+/**
+ * Validates and canonicalizes the urls to proxy, and applies the host allow / deny lists: a host
+ * matching a denied pattern is rejected, and so is one matching no allowed pattern when any is set.
+ */
+@Component
+public class UrlPolicy {
+
+    private final HostTrie allowed;
+    private final HostTrie denied;
+
+    public UrlPolicy(UrlPolicyProperties properties) {
+        this.allowed = new HostTrie(properties.getAllowedHosts());
+        this.denied = new HostTrie(properties.getDeniedHosts());
+    }
+
+    /**
+     * @throws ProxyException when the url is invalid or its host is not allowed
+     */
+    public String canonicalize(String proxyUrl) {
+        CanonicalUrl url = CanonicalUrl.parse(proxyUrl);
+        if (denied.matches(url.getHost()) || (!allowed.isEmpty() && !allowed.matches(url.getHost()))) {
+            throw new ProxyException(
+                String.format("Cannot proxy to %s. Host %s is not allowed", proxyUrl, url.getHost()),
+                null,
+                false
+            );
+        }
+        return url.getUrl();
+    }
+}
@@ -0,0 +1,370 @@
+package com.lt.proxy.warmup;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.HeaderLoggingProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.config.RetryProperties;
+import com.lt.proxy.config.UpstreamClientProperties;
+import com.lt.proxy.config.UrlPolicyProperties;
+import com.lt.proxy.config.WarmupProperties;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.resilience.Retries;
+import com.lt.proxy.service.ProxyService;
+import com.lt.proxy.service.RequestCoalescer;
+import com.lt.proxy.service.StreamCopier;
+import com.lt.proxy.url.UrlPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Warms the proxy up before it is reported ready: opens pooled connections to the configured
+ * upstream hosts (resolving them on the way) and runs proxy calls against a local stub upstream
+ * so classes are loaded and the hot paths compiled. Runs once the application has started and
+ * before Spring Boot flips readiness to {@code ACCEPTING_TRAFFIC}, within {@code proxy.warmup.timeout}.
+ *
+ * <p>The calls go through the shared upstream client but a proxy service of their own, with fresh
+ * limiters, breakers and caches, metrics nobody exports and no url policy, so the stub leaves
+ * nothing behind in the state and stats real traffic relies on. They are logged like any other call,
+ * to the stub's url. The controller and its response serialization are not exercised.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private static final byte[] STUB_RESPONSE = stubResponse();
+
+    private final WarmupProperties properties;
+    private final UpstreamClientProperties upstreamProperties;
+    private final RestTemplate restTemplate;
+    private final PoolingHttpClientConnectionManager upstreamConnectionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProxyMetrics warmupMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    private final AtomicLong warmupMillis = new AtomicLong();
+    private final AtomicLong startupMillis = new AtomicLong();
+
+    public StartupWarmup(WarmupProperties properties,
+                         UpstreamClientProperties upstreamProperties,
+                         RestTemplate restTemplate,
+                         PoolingHttpClientConnectionManager upstreamConnectionManager,
+                         ApplicationEventPublisher eventPublisher,
+                         ProxyMetrics proxyMetrics) {
+        this.properties = properties;
+        this.upstreamProperties = upstreamProperties;
+        this.restTemplate = restTemplate;
+        this.upstreamConnectionManager = upstreamConnectionManager;
+        this.eventPublisher = eventPublisher;
+
+        MeterRegistry registry = proxyMetrics.getRegistry();
+        TimeGauge.builder("proxy.warmup.duration", warmupMillis, TimeUnit.MILLISECONDS, AtomicLong::get).register(registry);
+        TimeGauge.builder("proxy.startup.time", startupMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                 .description("Time from the JVM start until the application was ready")
+                 .register(registry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        long start = System.nanoTime();
+        long deadline = start + properties.getTimeout().toNanos();
+
+        int connections = preconnect(deadline);
+        AtomicInteger failures = new AtomicInteger();
+        int calls = exercise(deadline, failures);
+
+        warmupMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOGGER.info("Warm-up done in {}ms: {} connections opened to {} upstream hosts, {} proxy calls ({} failed)",
+                    warmupMillis.get(), connections, properties.getHosts().size(), calls, failures.get());
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        startupMillis.set(ManagementFactory.getRuntimeMXBean().getUptime());
+        LOGGER.info("Ready to take traffic {}ms after the JVM started, warm-up took {}ms", startupMillis.get(), warmupMillis.get());
+    }
+
+    /**
+     * Opens {@code connections-per-host} connections to each host, all held at once so that they
+     * are distinct, and hands them back to the pool as idle keep-alive connections.
+     */
+    int preconnect(long deadline) {
+        int opened = 0;
+        for (String host : properties.getHosts()) {
+            List<HttpClientConnection> connections = new ArrayList<>(properties.getConnectionsPerHost());
+            try {
+                HttpRoute route = route(host);
+                for (int i = 0; i < properties.getConnectionsPerHost() && System.nanoTime() < deadline; i++) {
+                    HttpClientConnection connection = upstreamConnectionManager.requestConnection(route, null)
+                                                                               .get(upstreamProperties.getPoolAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                    connections.add(connection);
+                    if (!connection.isOpen()) {
+                        HttpClientContext context = HttpClientContext.create();
+                        upstreamConnectionManager.connect(connection, route, (int) upstreamProperties.getConnectTimeout().toMillis(), context);
+                        upstreamConnectionManager.routeComplete(connection, route, context);
+                        opened++;
+                    }
+                }
+            } catch (IOException | RuntimeException | ExecutionException e) {
+                LOGGER.warn("Could not preconnect to {}: {}", host, e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connections.forEach(connection -> upstreamConnectionManager.releaseConnection(
+                    connection, null, upstreamProperties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS));
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Proxies {@code iterations} calls to a stub upstream on the loopback interface from
+     * {@code threads} threads. The stub answers uncacheable JSON so each call goes all the way
+     * through the upstream client.
+     */
+    int exercise(long deadline, AtomicInteger failures) {
+        if (properties.getIterations() <= 0) {
+            return 0;
+        }
+        Retries retries = new Retries(new RetryProperties(), warmupMetrics);
+        try {
+            return exercise(warmupService(retries), deadline, failures);
+        } finally {
+            retries.close();
+        }
+    }
+
+    private int exercise(ProxyService proxyService, long deadline, AtomicInteger failures) {
+        StubUpstream stub;
+        try {
+            stub = new StubUpstream();
+        } catch (IOException e) {
+            LOGGER.warn("Could not start the warm-up stub upstream: {}", e.toString());
+            return 0;
+        }
+        int threads = Math.max(1, properties.getThreads());
+        ExecutorService callers = Executors.newFixedThreadPool(threads, daemon("warmup"));
+        String stubUrl = "http://127.0.0.1:" + stub.port() + "/warmup?n=";
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            for (int t = 0; t < threads; t++) {
+                callers.execute(() -> {
+                    for (int n = next.getAndIncrement(); n < properties.getIterations() && System.nanoTime() < deadline; n = next.getAndIncrement()) {
+                        calls.incrementAndGet();
+                        try {
+                            proxyService.callUrl(stubUrl + n).release();
+                        } catch (RuntimeException e) {
+                            if (failures.getAndIncrement() == 0) {
+                                LOGGER.warn("Warm-up call to {} failed: {}", stubUrl + n, e.toString());
+                            }
+                        }
+                    }
+                });
+            }
+            callers.shutdown();
+            callers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            callers.shutdownNow();
+            stub.close();
+        }
+        return calls.get();
+    }
+
+    /**
+     * Proxy service of the warm-up calls: the shared clients, everything else of its own.
+     */
+    private ProxyService warmupService(Retries retries) {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setEnabled(false);
+        HeaderLoggingProperties headerLoggingProperties = new HeaderLoggingProperties();
+        headerLoggingProperties.setEnabled(false);
+        RateLimitProperties rateLimitProperties = new RateLimitProperties();
+        rateLimitProperties.setEnabled(false);
+        return new ProxyService(
+            restTemplate,
+            restTemplate,
+            new StreamCopier(8192),
+            new ResponseCache(cacheProperties),
+            new RequestCoalescer(new CoalescingProperties()),
+            new HeaderLogger(headerLoggingProperties),
+            warmupMetrics,
+            new CircuitBreakers(new CircuitBreakerProperties(), warmupMetrics),
+            new NegativeCache(new NegativeCacheProperties()),
+            retries,
+            new ConcurrencyLimiter(new ConcurrencyLimitProperties(), warmupMetrics),
+            new UrlPolicy(new UrlPolicyProperties()),
+            new RateLimiter(rateLimitProperties, warmupMetrics)
+        );
+    }
+
+    private static HttpRoute route(String host) {
+        HttpHost target = HttpHost.create(host);
+        // Same route as the one planned for requests, where the default port is explicit
+        return new HttpRoute(target.getPort() < 0 ? new HttpHost(target.getHostName(), 80, target.getSchemeName()) : target);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static byte[] stubResponse() {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 32; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"warm-up item ").append(i).append("\"}");
+        }
+        String body = json.append("]}").toString();
+        return ("HTTP/1.1 200 OK\r\n"
+                + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_JSON_VALUE + "\r\n"
+                + HttpHeaders.CACHE_CONTROL + ": no-store\r\n"
+                + HttpHeaders.CONTENT_LENGTH + ": " + body.length() + "\r\n"
+                + "\r\n"
+                + body).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Upstream on the loopback interface answering every request on a keep-alive connection with the
+     * same uncacheable JSON. Each response goes out in a single write on a {@code TCP_NODELAY}
+     * socket, so no call waits on a delayed ACK.
+     */
+    private static final class StubUpstream implements Closeable {
+
+        private final ServerSocket server = new ServerSocket();
+        private final ExecutorService executor = Executors.newCachedThreadPool(daemon("warmup-stub"));
+        private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+        private StubUpstream() throws IOException {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            executor.execute(this::accept);
+        }
+
+        private int port() {
+            return server.getLocalPort();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket connection = server.accept();
+                    connections.add(connection);
+                    executor.execute(() -> serve(connection));
+                }
+            } catch (IOException | RejectedExecutionException e) {
+                // Closed
+            }
+        }
+
+        private void serve(Socket connection) {
+            try (connection) {
+                connection.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(connection.getInputStream());
+                OutputStream out = connection.getOutputStream();
+                while (skipRequestHead(in)) {
+                    out.write(STUB_RESPONSE);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The client or the stub closed the connection
+            } finally {
+                connections.remove(connection);
+            }
+        }
+
+        /**
+         * Reads up to the blank line ending a request head, false once the client closed the connection.
+         */
+        private static boolean skipRequestHead(InputStream in) throws IOException {
+            int matched = 0;
+            int read;
+            while ((read = in.read()) != -1) {
+                if (read == (matched % 2 == 0 ? '\r' : '\n')) {
+                    matched++;
+                } else {
+                    matched = read == '\r' ? 1 : 0;
+                }
+                if (matched == 4) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+            executor.shutdownNow();
+            // Pooled client connections would otherwise keep their stub threads blocked on reads
+            for (Socket connection : connections) {
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
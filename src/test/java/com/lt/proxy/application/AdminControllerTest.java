@@ -0,0 +1,109 @@
+package com.lt.proxy.application;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.TimingProperties;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.service.RequestCoalescer;
+import com.lt.proxy.timing.SlowRequestLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AdminControllerTest {
+
+    private final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    private final ResponseCache responseCache = new ResponseCache(new CacheProperties());
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer(new CoalescingProperties());
+    private final ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    private final CircuitBreakers circuitBreakers = new CircuitBreakers(new CircuitBreakerProperties(), proxyMetrics);
+    private final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(new ConcurrencyLimitProperties(), proxyMetrics);
+    private final SlowRequestLog slowRequestLog = new SlowRequestLog(new TimingProperties());
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(
+                                                   new AdminController(connectionManager, responseCache, requestCoalescer, circuitBreakers,
+                                                                       concurrencyLimiter, slowRequestLog)
+                                               )
+                                               .build();
+
+    @Test
+    void upstreamPool_idlePool_statsReported() throws Exception {
+
+        //GIVEN: an idle pool with custom limits
+        connectionManager.setMaxTotal(42);
+
+        //WHEN: requesting the pool statistics
+        ResultActions results = mvc.perform(get("/admin/upstream-pool"));
+
+        //THEN: the totals are reported without any route
+        results.andExpect(status().isOk())
+               .andExpect(
+                   content().json(
+                       "{" +
+                           "'leased': 0," +
+                           "'pending': 0," +
+                           "'available': 0," +
+                           "'max': 42," +
+                           "'routes': {}" +
+                       "}"
+                   )
+               );
+    }
+
+    @Test
+    void cache_emptyCache_statsReported() throws Exception {
+
+        //GIVEN: an empty response cache that was looked up once
+        responseCache.lookup("http://www.google.com");
+
+        //WHEN: requesting the cache statistics
+        ResultActions results = mvc.perform(get("/admin/cache"));
+
+        //THEN: the lookup is reported as a miss
+        results.andExpect(status().isOk())
+               .andExpect(
+                   content().json(
+                       "{" +
+                           "'enabled': true," +
+                           "'entries': 0," +
+                           "'hits': 0," +
+                           "'misses': 1," +
+                           "'evictions': 0" +
+                       "}"
+                   )
+               );
+    }
+
+    @Test
+    void slowRequests_noSlowRequest_emptyLogReported() throws Exception {
+
+        //GIVEN: no request slower than the default threshold
+
+        //WHEN: requesting the slow requests
+        ResultActions results = mvc.perform(get("/admin/slow-requests"));
+
+        //THEN: the threshold is reported without any request
+        results.andExpect(status().isOk())
+               .andExpect(
+                   content().json(
+                       "{" +
+                           "'thresholdMillis': 1000," +
+                           "'recorded': 0," +
+                           "'requests': []" +
+                       "}"
+                   )
+               );
+    }
+}
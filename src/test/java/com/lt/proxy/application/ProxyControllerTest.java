@@ -1,20 +1,53 @@
 package com.lt.proxy.application;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.config.BatchProperties;
+import com.lt.proxy.config.ErrorLoggingProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.config.TimingProperties;
 import com.lt.proxy.exception.ProxyControllerExceptionHandler;
 import com.lt.proxy.exception.ProxyException;
 import com.lt.proxy.exception.ResourceNotFoundException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.exception.TooManyRequestsException;
+import com.lt.proxy.logging.ErrorLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.service.AsyncProxyService;
+import com.lt.proxy.service.BatchProxyService;
 import com.lt.proxy.service.ProxyService;
+import com.lt.proxy.service.ResponseSink;
+import com.lt.proxy.timing.RequestTiming;
+import com.lt.proxy.timing.SlowRequestLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,8 +56,11 @@ class ProxyControllerTest {
     private static final String BASE_URL = "/proxy";
 
     private final ProxyService proxyServiceMock = mock(ProxyService.class);
-    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock))
-                                               .setControllerAdvice(new ProxyControllerExceptionHandler())
+    private final AsyncProxyService asyncProxyServiceMock = mock(AsyncProxyService.class);
+    private final ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    private final BatchProxyService batchProxyService = new BatchProxyService(asyncProxyServiceMock, proxyMetrics, new BatchProperties());
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock, asyncProxyServiceMock, batchProxyService))
+                                               .setControllerAdvice(new ProxyControllerExceptionHandler(proxyMetrics, new ErrorLogger(new ErrorLoggingProperties())))
                                                .build();
 
     @Test
@@ -37,7 +73,7 @@ class ProxyControllerTest {
         String expectedResponseBody = "some response body";
         when(
             proxyServiceMock.callUrl(proxyUrl)
-        ).thenReturn(expectedResponseBody);
+        ).thenReturn(ProxyBody.of(expectedResponseBody));
 
         //WHEN: requesting a call to the proxy url
         String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
@@ -107,4 +143,299 @@ class ProxyControllerTest {
                    )
                );
     }
-}
\ No newline at end of file
+
+    @Test
+    void getResponseHeaders_concurrencyLimitReached_ServiceUnavailableWithRetryAfter() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+
+        //AND: the call is shed because the upstream concurrency limit is reached
+        String errorMessage = "Concurrency limit of 20 calls reached for upstream host: www.google.com";
+        when(
+            proxyServiceMock.callUrl(proxyUrl)
+        ).thenThrow(new ServiceUnavailableException(errorMessage, Duration.ofMillis(1500)));
+
+        //WHEN: requesting a call to the proxy url
+        String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions results = mvc.perform(get(url));
+
+        //THEN: the client is told to come back later
+        results.andExpect(status().isServiceUnavailable())
+               .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+               .andExpect(
+                   content().json(
+                       "{" +
+                           "'errorMessage': '" + errorMessage + "'" +
+                       "}"
+                   )
+               );
+    }
+
+    @Test
+    void getResponseHeaders_clientOverRateLimit_TooManyRequestsWithQuotaHeaders() throws Exception {
+
+        //GIVEN: clients allowed a burst of two requests and one more every ten seconds
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setClientRate(0.1);
+        properties.setClientBurst(2);
+        MockMvc rateLimitedMvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock, asyncProxyServiceMock, batchProxyService))
+                                                .setControllerAdvice(new ProxyControllerExceptionHandler(proxyMetrics, new ErrorLogger(new ErrorLoggingProperties())))
+                                                .addInterceptors(new RateLimitInterceptor(new RateLimiter(properties, proxyMetrics), properties))
+                                                .build();
+
+        //AND: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+        when(
+            proxyServiceMock.callUrl(proxyUrl)
+        ).thenReturn(ProxyBody.of("some response body"));
+
+        //WHEN: the same client calls it three times in a row
+        String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions first = rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+        rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+        ResultActions third = rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+
+        //THEN: the first call is answered with the client's remaining quota
+        first.andExpect(status().isOk())
+             .andExpect(header().string(RateLimitInterceptor.LIMIT_HEADER, "2"))
+             .andExpect(header().string(RateLimitInterceptor.REMAINING_HEADER, "1"));
+
+        //AND: the third one is rejected until a token is available again
+        third.andExpect(status().isTooManyRequests())
+             .andExpect(header().string(RateLimitInterceptor.REMAINING_HEADER, "0"))
+             .andExpect(header().string(HttpHeaders.RETRY_AFTER, "10"));
+    }
+
+    @Test
+    void getResponseHeaders_hostOverRateLimit_clientTokenGivenBack() throws Exception {
+
+        //GIVEN: clients allowed a burst of two requests
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setClientRate(0.1);
+        properties.setClientBurst(2);
+        MockMvc rateLimitedMvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock, asyncProxyServiceMock, batchProxyService))
+                                                .setControllerAdvice(new ProxyControllerExceptionHandler(proxyMetrics, new ErrorLogger(new ErrorLoggingProperties())))
+                                                .addInterceptors(new RateLimitInterceptor(new RateLimiter(properties, proxyMetrics), properties))
+                                                .build();
+
+        //AND: an upstream host over its own rate limit
+        final String proxyUrl = "http://www.google.com";
+        when(
+            proxyServiceMock.callUrl(proxyUrl)
+        ).thenThrow(new TooManyRequestsException("Rate limit of upstream host www.google.com exceeded, retry in 1s", Duration.ofSeconds(1)));
+
+        //WHEN: a client calls it three times in a row
+        String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
+        rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+        rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+        ResultActions third = rateLimitedMvc.perform(get(url).header("X-API-Key", "some-key"));
+
+        //THEN: every call is turned down by the host's limit, none spent the client's quota
+        third.andExpect(status().isTooManyRequests())
+             .andExpect(header().string(RateLimitInterceptor.REMAINING_HEADER, "1"))
+             .andExpect(content().json("{'errorMessage': 'Rate limit of upstream host www.google.com exceeded, retry in 1s'}"));
+    }
+
+    @Test
+    void getResponseHeaders_requestTimed_ServerTimingHeaderAndSlowRequestLogged() throws Exception {
+
+        //GIVEN: every request counted as slow
+        TimingProperties properties = new TimingProperties();
+        properties.setSlowThreshold(Duration.ZERO);
+        SlowRequestLog slowRequestLog = new SlowRequestLog(properties);
+        MockMvc timedMvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock, asyncProxyServiceMock, batchProxyService))
+                                          .addInterceptors(new RequestTimingInterceptor(properties, slowRequestLog))
+                                          .build();
+
+        //AND: a proxy call waiting 5ms for the upstream
+        final String proxyUrl = "http://www.google.com";
+        when(
+            proxyServiceMock.callUrl(proxyUrl)
+        ).thenAnswer(invocation -> {
+            RequestTiming.record(RequestTiming.Phase.UPSTREAM, System.nanoTime() - 5_000_000);
+            return ProxyBody.of("some response body");
+        });
+
+        //WHEN: requesting a call to the proxy url
+        String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions results = timedMvc.perform(get(url));
+
+        //THEN: the upstream wait and the total are reported
+        results.andExpect(status().isOk())
+               .andExpect(header().string(RequestTiming.SERVER_TIMING_HEADER, matchesPattern("upstream;dur=5\\.\\d{3}, total;dur=\\d+\\.\\d{3}")));
+
+        //AND: the request is kept in the slow request log
+        assertEquals(1L, slowRequestLog.stats().get("recorded"));
+    }
+
+    @Test
+    void getResponseHeaders_timedRequestFails_ServerTimingHeaderOnErrorResponse() throws Exception {
+
+        //GIVEN: timed requests, with errors turned into responses
+        TimingProperties properties = new TimingProperties();
+        MockMvc timedMvc = MockMvcBuilders.standaloneSetup(new ProxyController(proxyServiceMock, asyncProxyServiceMock, batchProxyService))
+                                          .setControllerAdvice(new ProxyControllerExceptionHandler(proxyMetrics, new ErrorLogger(new ErrorLoggingProperties())))
+                                          .addInterceptors(new RequestTimingInterceptor(properties, new SlowRequestLog(properties)))
+                                          .build();
+
+        //AND: a proxy call failing after waiting 5ms for the upstream
+        final String proxyUrl = "http://www.google.com";
+        when(
+            proxyServiceMock.callUrl(proxyUrl)
+        ).thenAnswer(invocation -> {
+            RequestTiming.record(RequestTiming.Phase.UPSTREAM, System.nanoTime() - 5_000_000);
+            throw new ServiceUnavailableException("Upstream www.google.com is unavailable");
+        });
+
+        //WHEN: requesting a call to the proxy url
+        String url = String.format("%s?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions results = timedMvc.perform(get(url));
+
+        //THEN: the error response reports where the time went too
+        results.andExpect(status().isServiceUnavailable())
+               .andExpect(header().string(RequestTiming.SERVER_TIMING_HEADER, matchesPattern("upstream;dur=5\\.\\d{3}, total;dur=\\d+\\.\\d{3}")));
+    }
+
+    @Test
+    void streamUrl_proxyCallExecutedSuccessfully_bodyAndHeadersPropagated() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+
+        //AND: the upstream body is streamed through the service
+        byte[] expectedResponseBody = "some response body".getBytes(StandardCharsets.UTF_8);
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamHeaders.setContentType(MediaType.TEXT_HTML);
+        upstreamHeaders.setContentLength(expectedResponseBody.length);
+        doAnswer(invocation -> {
+            invocation.<ResponseSink>getArgument(2)
+                      .open(HttpStatus.OK, upstreamHeaders)
+                      .write(expectedResponseBody);
+            return null;
+        }).when(proxyServiceMock).streamUrl(eq(proxyUrl), isNull(), any(ResponseSink.class));
+
+        //WHEN: requesting a streamed call to the proxy url
+        String url = String.format("%s/stream?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions results = mvc.perform(get(url));
+
+        //THEN: the upstream body, content type and length are propagated
+        results.andExpect(status().isOk())
+               .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_HTML_VALUE))
+               .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, expectedResponseBody.length))
+               .andExpect(content().bytes(expectedResponseBody));
+    }
+
+    @Test
+    void streamUrl_upstreamBodyGzipEncoded_encodingPassedThrough() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+
+        //AND: the upstream answers the client's Accept-Encoding with a gzip-encoded body
+        byte[] encodedBody = {0x1f, (byte) 0x8b, 8, 0};
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamHeaders.setContentType(MediaType.TEXT_HTML);
+        upstreamHeaders.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        doAnswer(invocation -> {
+            invocation.<ResponseSink>getArgument(2)
+                      .open(HttpStatus.OK, upstreamHeaders)
+                      .write(encodedBody);
+            return null;
+        }).when(proxyServiceMock).streamUrl(eq(proxyUrl), eq("gzip"), any(ResponseSink.class));
+
+        //WHEN: requesting a streamed call to the proxy url accepting gzip
+        String url = String.format("%s/stream?proxy-url=%s", BASE_URL, proxyUrl);
+        ResultActions results = mvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+
+        //THEN: the encoded bytes are sent with their content encoding
+        results.andExpect(status().isOk())
+               .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+               .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+               .andExpect(content().bytes(encodedBody));
+    }
+
+    @Test
+    void callUrlAsync_proxyCallCompletesSuccessfully_OkResponse() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+
+        //AND: the asynchronous proxy call completes successfully
+        String expectedResponseBody = "some response body";
+        when(
+            asyncProxyServiceMock.callUrl(proxyUrl)
+        ).thenReturn(CompletableFuture.completedFuture(expectedResponseBody));
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        String url = String.format("%s/async?proxy-url=%s", BASE_URL, proxyUrl);
+        MvcResult asyncResult = mvc.perform(get(url)).andReturn();
+        ResultActions results = mvc.perform(asyncDispatch(asyncResult));
+
+        //THEN: the response body is propagated
+        results.andExpect(status().isOk())
+               .andExpect(
+                   content().string(expectedResponseBody)
+               );
+    }
+
+    @Test
+    void callUrlAsync_proxyCallFailsWithResourceNotFoundException_NotFoundResponse() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com";
+
+        //AND: the asynchronous proxy call fails with ResourceNotFoundException
+        String errorMessage = "some error message";
+        when(
+            asyncProxyServiceMock.callUrl(proxyUrl)
+        ).thenReturn(CompletableFuture.failedFuture(new ResourceNotFoundException(errorMessage, new Exception("Some cause"))));
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        String url = String.format("%s/async?proxy-url=%s", BASE_URL, proxyUrl);
+        MvcResult asyncResult = mvc.perform(get(url)).andReturn();
+        ResultActions results = mvc.perform(asyncDispatch(asyncResult));
+
+        //THEN: the error is mapped like the synchronous call
+        results.andExpect(status().isNotFound())
+               .andExpect(
+                   content().json(
+                       "{" +
+                           "'errorMessage': '" + errorMessage + "'" +
+                       "}"
+                   )
+               );
+    }
+
+    @Test
+    void callUrls_batchOfUrls_oneNdjsonLinePerUrl() throws Exception {
+
+        //GIVEN: a batch of two urls to proxy
+        final String okUrl = "http://www.google.com";
+        final String missingUrl = "http://www.google.com/missing";
+
+        //AND: one of them is answered, the other one does not exist upstream
+        when(
+            asyncProxyServiceMock.callUrl(okUrl)
+        ).thenReturn(CompletableFuture.completedFuture("some response body"));
+        when(
+            asyncProxyServiceMock.callUrl(missingUrl)
+        ).thenReturn(CompletableFuture.failedFuture(new ResourceNotFoundException("Could not found: " + missingUrl, null)));
+
+        //WHEN: requesting a batch call
+        MvcResult asyncResult = mvc.perform(
+            post(BASE_URL + "/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"" + okUrl + "\", \"" + missingUrl + "\"]")
+        ).andReturn();
+        asyncResult.getAsyncResult();
+
+        //THEN: every url gets its own NDJSON line with the status GET /proxy would have answered
+        assertEquals(MediaType.APPLICATION_NDJSON_VALUE, asyncResult.getResponse().getContentType());
+        assertEquals(
+            "{\"url\":\"" + okUrl + "\",\"status\":200,\"body\":\"some response body\"}\n" +
+            "{\"url\":\"" + missingUrl + "\",\"status\":404,\"errorMessage\":\"Could not found: " + missingUrl + "\"}\n",
+            asyncResult.getResponse().getContentAsString()
+        );
+    }
+}
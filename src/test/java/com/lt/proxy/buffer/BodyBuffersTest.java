@@ -0,0 +1,122 @@
+package com.lt.proxy.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import com.lt.proxy.config.BufferProperties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyBuffersTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    @Test
+    void read_bodyBelowThreshold_decodedInMemory() throws Exception {
+
+        //GIVEN: body buffers spilling above 1KB
+        BodyBuffers bodyBuffers = new BodyBuffers(properties(DataSize.ofKilobytes(1), DataSize.ofMegabytes(1)));
+
+        //WHEN: reading a body spanning several chunks but below the threshold, with multi-byte characters
+        String text = "some response body \u00e9t\u00e9 ".repeat(20);
+        ProxyBody body = bodyBuffers.read(stream(text), MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+        //THEN: the body is kept as text, its size in bytes
+        assertFalse(body.isSpilled());
+        assertEquals(text, body.getText());
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, body.size());
+
+        //AND: its chunks' share of the memory budget is held until the body is released
+        assertEquals(2 * 256L, bodyBuffers.stats().get("reservedBytes"));
+        body.release();
+        assertEquals(0L, bodyBuffers.stats().get("reservedBytes"));
+    }
+
+    @Test
+    void read_bodyOfExactlyThreshold_decodedInMemory() throws Exception {
+
+        //GIVEN: body buffers spilling above 1KB
+        BodyBuffers bodyBuffers = new BodyBuffers(properties(DataSize.ofKilobytes(1), DataSize.ofMegabytes(1)));
+
+        //WHEN: reading a body of exactly 1KB, ending on a chunk boundary
+        String text = "x".repeat(1024);
+        ProxyBody body = bodyBuffers.read(stream(text), MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+        //THEN: it is complete in memory, no temp file is created
+        assertFalse(body.isSpilled());
+        assertEquals(text, body.getText());
+        assertEquals(0, tempFiles());
+        body.release();
+    }
+
+    @Test
+    void read_bodyAboveThreshold_spilledAndDeletedOnLastRelease() throws Exception {
+
+        //GIVEN: body buffers spilling above 1KB
+        BodyBuffers bodyBuffers = new BodyBuffers(properties(DataSize.ofKilobytes(1), DataSize.ofMegabytes(1)));
+
+        //WHEN: reading a larger body, shared by a second user
+        String text = "x".repeat(10_000);
+        ProxyBody body = bodyBuffers.read(stream(text), MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+        assertTrue(body.retain());
+
+        //THEN: its bytes are written back from the temp file
+        assertTrue(body.isSpilled());
+        assertEquals(10_000, body.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+
+        //AND: the temp file is only closed with the last release
+        body.release();
+        assertEquals(1, bodyBuffers.stats().get("spilledInUse"));
+        body.release();
+        assertEquals(0, bodyBuffers.stats().get("spilledInUse"));
+        assertEquals(0, tempFiles());
+        assertFalse(body.retain());
+    }
+
+    @Test
+    void read_memoryBudgetUsedUp_spilledBelowThreshold() throws Exception {
+
+        //GIVEN: a memory budget of a single chunk
+        BodyBuffers bodyBuffers = new BodyBuffers(properties(DataSize.ofMegabytes(1), DataSize.ofBytes(256)));
+
+        //WHEN: reading a body needing more than one chunk
+        ProxyBody body = bodyBuffers.read(stream("x".repeat(1000)), null, StandardCharsets.UTF_8);
+
+        //THEN: it is spilled although far below the spill threshold
+        assertTrue(body.isSpilled());
+        body.release();
+    }
+
+    private BufferProperties properties(DataSize spillThreshold, DataSize memoryBudget) {
+        BufferProperties properties = new BufferProperties();
+        properties.setChunkSize(DataSize.ofBytes(256));
+        properties.setSpillThreshold(spillThreshold);
+        properties.setMemoryBudget(memoryBudget);
+        properties.setTempDirectory(tempDirectory);
+        return properties;
+    }
+
+    private long tempFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
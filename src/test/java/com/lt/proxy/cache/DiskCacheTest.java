@@ -0,0 +1,179 @@
+package com.lt.proxy.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+import com.lt.proxy.config.DiskCacheProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskCacheTest {
+
+    private static final String URL = "http://www.google.com";
+    private static final Instant NOW = Instant.parse("2021-12-01T10:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void lookup_afterRestart_servesEntriesOfPreviousRun() throws IOException {
+
+        //GIVEN: an entry stored before a restart
+        DiskCache before = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+        before.store(URL, response("some response body", "public, max-age=60"));
+        before.close();
+
+        //WHEN: a new instance opens the same directory
+        DiskCache after = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+
+        //THEN: the entry is served with its headers and freshness
+        CachedResponse cached = after.lookup(URL);
+        assertNotNull(cached);
+        assertEquals("some response body", cached.getBody());
+        assertEquals("public, max-age=60", cached.getHeaders().getCacheControl());
+        assertTrue(cached.isFresh(NOW.plusSeconds(59).toEpochMilli()));
+        assertFalse(cached.isFresh(NOW.plusSeconds(61).toEpochMilli()));
+        assertNull(after.lookup(URL + "/other"));
+        assertEquals(1L, after.stats().get("hits"));
+        assertEquals(0.5, after.stats().get("hitRatio"));
+    }
+
+    @Test
+    void store_overwrittenAndInvalidated_latestStateSurvivesRestart() throws IOException {
+
+        //GIVEN: an entry overwritten once and another one invalidated
+        DiskCache before = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+        before.store(URL, response("first body", "max-age=60"));
+        before.store(URL, response("second body", "max-age=60"));
+        before.store(URL + "/gone", response("gone body", "max-age=60"));
+        before.invalidate(URL + "/gone");
+        before.close();
+
+        //WHEN: reopening the directory
+        DiskCache after = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+
+        //THEN: the latest body is served and the invalidated entry stays forgotten
+        assertEquals("second body", after.lookup(URL).getBody());
+        assertNull(after.lookup(URL + "/gone"));
+        assertEquals(1, after.stats().get("entries"));
+    }
+
+    @Test
+    void maintain_overMaxSize_dropsOldestSegment() throws IOException {
+
+        //GIVEN: more entries than the size bound holds
+        DiskCache cache = open(DataSize.ofKilobytes(4), DataSize.ofKilobytes(8));
+        for (int i = 0; i < 12; i++) {
+            cache.store(URL + "/" + i, response("x".repeat(1000), "max-age=60"));
+        }
+
+        //WHEN: maintenance runs
+        cache.maintain();
+
+        //THEN: the oldest entries are gone, the newest are kept and the files fit the bound
+        assertNull(cache.lookup(URL + "/0"));
+        assertNotNull(cache.lookup(URL + "/11"));
+        assertTrue((long) cache.stats().get("diskBytes") <= DataSize.ofKilobytes(8).toBytes());
+        assertTrue((long) cache.stats().get("evictions") > 0);
+    }
+
+    @Test
+    void maintain_mostlyOverwrittenSegment_compactsLiveEntries() throws IOException {
+
+        //GIVEN: a sealed segment holding one live entry and overwritten ones
+        DiskCache cache = open(DataSize.ofKilobytes(4), DataSize.ofMegabytes(8));
+        cache.store(URL + "/kept", response("k".repeat(1000), "max-age=60"));
+        for (int i = 0; i < 6; i++) {
+            cache.store(URL, response("x".repeat(1000), "max-age=60"));
+        }
+
+        //WHEN: maintenance runs
+        cache.maintain();
+
+        //THEN: the segment is rewritten into the active one and its file deleted
+        assertFalse(Files.exists(directory.resolve("segment-0.dat")));
+        assertEquals("k".repeat(1000), cache.lookup(URL + "/kept").getBody());
+        assertEquals("x".repeat(1000), cache.lookup(URL).getBody());
+        assertTrue((long) cache.stats().get("compactions") > 0);
+    }
+
+    @Test
+    void maintain_compactedTombstoneOlderEntry_stillForgottenAfterRestart() throws IOException {
+
+        //GIVEN: an entry in a segment that stays, invalidated by a tombstone in a segment otherwise overwritten
+        DiskCache before = open(DataSize.ofKilobytes(4), DataSize.ofMegabytes(8));
+        before.store(URL + "/gone", response("g".repeat(1000), "max-age=60"));
+        before.store(URL + "/kept/1", response("k".repeat(1000), "max-age=60"));
+        before.store(URL + "/kept/2", response("k".repeat(1000), "max-age=60"));
+        before.store(URL, response("x".repeat(1000), "max-age=60"));
+        before.invalidate(URL + "/gone");
+        for (int i = 0; i < 3; i++) {
+            before.store(URL, response("x".repeat(1000), "max-age=60"));
+        }
+
+        //WHEN: the tombstone's segment is compacted away, then the cache restarted
+        before.maintain();
+        before.close();
+        DiskCache after = open(DataSize.ofKilobytes(4), DataSize.ofMegabytes(8));
+
+        //THEN: the tombstone's segment is gone but the entry it invalidated stays forgotten
+        assertTrue(Files.exists(directory.resolve("segment-0.dat")));
+        assertFalse(Files.exists(directory.resolve("segment-1.dat")));
+        assertNull(after.lookup(URL + "/gone"));
+        assertEquals("k".repeat(1000), after.lookup(URL + "/kept/1").getBody());
+        assertEquals("x".repeat(1000), after.lookup(URL).getBody());
+    }
+
+    @Test
+    void lookup_expiredWithoutValidator_miss() throws IOException {
+
+        //GIVEN: an entry stored a minute before now, fresh for 10 seconds
+        Instant earlier = NOW.minusSeconds(60);
+        DiskCache before = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8), earlier);
+        before.store(URL, CachedResponse.of(HttpStatus.OK, headers("max-age=10"), "some response body", earlier.toEpochMilli()));
+        before.close();
+
+        //WHEN: looking it up after a restart
+        DiskCache cache = open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+
+        //THEN: it is not served
+        assertNull(cache.lookup(URL));
+    }
+
+    private DiskCache open(DataSize segmentSize, DataSize maxSize) throws IOException {
+        return open(segmentSize, maxSize, NOW);
+    }
+
+    private DiskCache open(DataSize segmentSize, DataSize maxSize, Instant now) throws IOException {
+        DiskCacheProperties properties = new DiskCacheProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        properties.setSegmentSize(segmentSize);
+        properties.setMaxSize(maxSize);
+        DiskCache cache = new DiskCache(properties, Clock.fixed(now, ZoneOffset.UTC));
+        cache.open();
+        return cache;
+    }
+
+    private static CachedResponse response(String body, String cacheControl) {
+        return CachedResponse.of(HttpStatus.OK, headers(cacheControl), body, NOW.toEpochMilli());
+    }
+
+    private static HttpHeaders headers(String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+}
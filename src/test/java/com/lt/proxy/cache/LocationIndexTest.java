@@ -0,0 +1,63 @@
+package com.lt.proxy.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocationIndexTest {
+
+    private final LocationIndex index = new LocationIndex();
+
+    @Test
+    void putAndRemove_manyKeysPastResizes_sameContentAsHashMap() {
+
+        //GIVEN: random puts, overwrites and removals over a small key space, well past the initial capacity
+        Random random = new Random(42);
+        long[] keys = new long[5_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        Map<Long, Long> expected = new HashMap<>();
+
+        //WHEN: applying them to the index and to a map
+        for (int i = 0; i < 50_000; i++) {
+            long key = keys[random.nextInt(keys.length)];
+            if (random.nextInt(3) == 0) {
+                Long previous = expected.remove(key);
+                assertEquals(previous == null ? LocationIndex.MISSING : previous, index.remove(key));
+            } else {
+                long location = random.nextInt(Integer.MAX_VALUE);
+                Long previous = expected.put(key, location);
+                assertEquals(previous == null ? LocationIndex.MISSING : previous, index.put(key, location));
+            }
+        }
+
+        //THEN: every key maps to the same location, removed keys are missing
+        assertEquals(expected.size(), index.size());
+        for (long key : keys) {
+            assertEquals(expected.getOrDefault(key, LocationIndex.MISSING), index.get(key));
+        }
+    }
+
+    @Test
+    void remove_expectedLocation_onlyRemovedWhileUnchanged() {
+
+        //GIVEN: a key whose location was replaced
+        index.put(7L, 100L);
+        index.put(7L, 200L);
+
+        //WHEN: removing it at its former location, then at its current one
+        boolean staleRemoved = index.remove(7L, 100L);
+        boolean currentRemoved = index.remove(7L, 200L);
+
+        //THEN: only the current location is removed
+        assertFalse(staleRemoved);
+        assertTrue(currentRemoved);
+        assertFalse(index.containsKey(7L));
+    }
+}
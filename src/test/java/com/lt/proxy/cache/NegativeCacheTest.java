@@ -0,0 +1,48 @@
+package com.lt.proxy.cache;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ResourceNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NegativeCacheTest {
+
+    private final NegativeCache negativeCache = new NegativeCache(new NegativeCacheProperties());
+
+    @Test
+    void lookup_missingUrlStored_stacklessErrorWithoutUpstreamBody() {
+
+        //GIVEN: a 404 error caused by an upstream answer with a large error page
+        byte[] errorPage = new byte[512 * 1024];
+        HttpClientErrorException upstreamError = HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, errorPage, StandardCharsets.UTF_8);
+        negativeCache.store("http://www.google.com/some-path", 404, new ResourceNotFoundException("Could not found: http://www.google.com/some-path", upstreamError));
+
+        //WHEN: looking the url up
+        RuntimeException error = negativeCache.lookup("http://www.google.com/some-path");
+
+        //THEN: the same error is answered, without the upstream response or a stack trace
+        assertEquals(ResourceNotFoundException.class, error.getClass());
+        assertEquals("Could not found: http://www.google.com/some-path", error.getMessage());
+        assertNull(error.getCause());
+        assertEquals(0, error.getStackTrace().length);
+        assertEquals(1, negativeCache.hitCount());
+    }
+
+    @Test
+    void store_goneOrOtherStatuses_onlyGoneRemembered() {
+
+        //WHEN: storing a GONE and a FORBIDDEN answer
+        negativeCache.store("http://www.google.com/gone", 410, new ProxyException("Unexpected error when Executing GET call to: http://www.google.com/gone"));
+        negativeCache.store("http://www.google.com/forbidden", 403, new ProxyException("Unexpected error when Executing GET call to: http://www.google.com/forbidden"));
+
+        //THEN: only the GONE url is known to be missing
+        assertEquals(ProxyException.class, negativeCache.lookup("http://www.google.com/gone").getClass());
+        assertNull(negativeCache.lookup("http://www.google.com/forbidden"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.lt.proxy.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.DiskCacheProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    private static final String URL = "http://www.google.com";
+    private static final Instant NOW = Instant.parse("2021-12-01T10:00:00Z");
+
+    @Test
+    void lookup_maxAgeResponse_freshUntilMaxAge() {
+
+        //GIVEN: a response cacheable for 60 seconds
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("public, max-age=60");
+        ResponseCache cache = cacheAt(NOW);
+
+        //WHEN: storing it
+        cache.store(URL, HttpStatus.OK, headers, "some response body");
+
+        //THEN: it is served fresh until the max-age elapses
+        CachedResponse cached = cache.lookup(URL);
+        assertEquals("some response body", cached.getBody());
+        assertTrue(cached.isFresh(NOW.plusSeconds(59).toEpochMilli()));
+        assertFalse(cached.isFresh(NOW.plusSeconds(61).toEpochMilli()));
+        assertEquals(1L, cache.stats().get("hits"));
+    }
+
+    @Test
+    void store_noStoreOrPrivateOrVaryStar_notCached() {
+
+        //GIVEN: responses a shared cache must not store
+        ResponseCache cache = cacheAt(NOW);
+        for (String cacheControl : new String[]{"no-store", "private, max-age=60"}) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setCacheControl(cacheControl);
+
+            //WHEN: storing them
+            cache.store(URL, HttpStatus.OK, headers, "some response body");
+
+            //THEN: nothing is cached
+            assertNull(cache.lookup(URL));
+        }
+        HttpHeaders varyHeaders = new HttpHeaders();
+        varyHeaders.setCacheControl("max-age=60");
+        varyHeaders.setVary(List.of("*"));
+        cache.store(URL, HttpStatus.OK, varyHeaders, "some response body");
+        assertNull(cache.lookup(URL));
+    }
+
+    @Test
+    void store_noFreshnessNoValidator_notCached() {
+
+        //GIVEN: a response without freshness information nor validators
+        ResponseCache cache = cacheAt(NOW);
+
+        //WHEN: storing it
+        cache.store(URL, HttpStatus.OK, new HttpHeaders(), "some response body");
+
+        //THEN: nothing is cached
+        assertNull(cache.lookup(URL));
+    }
+
+    @Test
+    void revalidated_staleEntryWithEtag_conditionalHeadersAndRefreshedFreshness() {
+
+        //GIVEN: a stored response that must always be revalidated
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("no-cache");
+        headers.setETag("\"v1\"");
+        ResponseCache cache = cacheAt(NOW);
+        cache.store(URL, HttpStatus.OK, headers, "some response body");
+        CachedResponse stale = cache.lookup(URL);
+        assertNotNull(stale);
+        assertFalse(cache.isFresh(stale));
+
+        //WHEN: the upstream answers 304 to the conditional GET with a new max-age
+        HttpHeaders conditional = cache.revalidationHeaders(stale);
+        HttpHeaders notModified = new HttpHeaders();
+        notModified.setCacheControl("max-age=60");
+        notModified.setETag("\"v1\"");
+        CachedResponse refreshed = cache.revalidated(URL, stale, notModified);
+
+        //THEN: the ETag was sent and the stored body is served fresh again
+        assertEquals("\"v1\"", conditional.getIfNoneMatch().get(0));
+        assertEquals("some response body", refreshed.getBody());
+        assertTrue(cache.isFresh(cache.lookup(URL)));
+        assertEquals(1L, cache.stats().get("notModified"));
+    }
+
+    @Test
+    void store_overByteBudget_entriesEvicted() {
+
+        //GIVEN: a cache that can only hold a couple of kilobytes
+        CacheProperties properties = new CacheProperties();
+        properties.setMaxSize(DataSize.ofKilobytes(2));
+        ResponseCache cache = new ResponseCache(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("max-age=60");
+
+        //WHEN: storing more bytes than the budget
+        String body = "x".repeat(900);
+        for (int i = 0; i < 10; i++) {
+            cache.store(URL + "/" + i, HttpStatus.OK, headers, body);
+        }
+
+        //THEN: entries are evicted to honour the byte budget
+        assertTrue((Long) cache.stats().get("weightBytes") <= 2048);
+        assertTrue((Long) cache.stats().get("evictions") > 0);
+    }
+
+    @Test
+    void lookup_afterRestartWithDiskTier_servedFromDisk(@TempDir Path directory) throws IOException {
+
+        //GIVEN: a response stored by a cache backed by a disk tier
+        DiskCacheProperties diskProperties = new DiskCacheProperties();
+        diskProperties.setEnabled(true);
+        diskProperties.setDirectory(directory);
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        DiskCache diskBefore = new DiskCache(diskProperties, clock);
+        diskBefore.open();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("max-age=60");
+        new ResponseCache(new CacheProperties(), diskBefore, clock).store(URL, HttpStatus.OK, headers, "some response body");
+        diskBefore.close();
+
+        //WHEN: a new cache over the same directory looks it up
+        DiskCache diskAfter = new DiskCache(diskProperties, clock);
+        diskAfter.open();
+        ResponseCache cache = new ResponseCache(new CacheProperties(), diskAfter, clock);
+        CachedResponse cached = cache.lookup(URL);
+
+        //THEN: it is served fresh from disk and promoted to memory
+        assertEquals("some response body", cached.getBody());
+        assertEquals(1L, cache.stats().get("hits"));
+        cache.lookup(URL);
+        assertEquals(1L, diskAfter.stats().get("hits"));
+    }
+
+    private static ResponseCache cacheAt(Instant instant) {
+        return new ResponseCache(new CacheProperties(), Clock.fixed(instant, ZoneOffset.UTC));
+    }
+}
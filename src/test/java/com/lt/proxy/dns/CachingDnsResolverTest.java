@@ -0,0 +1,119 @@
+package com.lt.proxy.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.conn.DnsResolver;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.DnsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingDnsResolverTest {
+
+    private static final String HOST = "www.google.com";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<InetAddress[]> answers = new ArrayList<>();
+
+    @Test
+    void resolve_withinTtl_servedFromCacheInRoundRobin() throws Exception {
+
+        //GIVEN: a host with two addresses
+        InetAddress first = address(10, 0, 0, 1);
+        InetAddress second = address(10, 0, 0, 2);
+        answers.add(new InetAddress[] {first, second});
+        CachingDnsResolver resolver = resolver(new DnsProperties());
+
+        //WHEN: resolving it three times within its TTL
+        InetAddress[] one = resolver.resolve(HOST);
+        InetAddress[] two = resolver.resolve(HOST);
+        InetAddress[] three = resolver.resolve(HOST);
+
+        //THEN: the host is looked up once and each connection starts with the next address
+        assertEquals(1, lookups.get());
+        assertArrayEquals(new InetAddress[] {first, second}, one);
+        assertArrayEquals(new InetAddress[] {second, first}, two);
+        assertArrayEquals(new InetAddress[] {first, second}, three);
+        assertEquals(1, registry.get("proxy.dns.resolution").tag("outcome", "SUCCESS").timer().count());
+        assertEquals(2, registry.get("proxy.dns.cache.hits").functionCounter().count());
+    }
+
+    @Test
+    void resolve_pastRefreshAfter_refreshedKeepingAddressesOnFailure() throws Exception {
+
+        //GIVEN: a host resolved once, refreshed after 45s and expiring after 60s
+        answers.add(new InetAddress[] {address(10, 0, 0, 1)});
+        CachingDnsResolver resolver = resolver(new DnsProperties());
+        resolver.resolve(HOST);
+
+        //WHEN: it is used again after 50s while its name server is failing
+        answers.add(null);
+        advance(Duration.ofSeconds(50));
+        InetAddress[] stale = resolver.resolve(HOST);
+
+        //THEN: the refresh runs but the known address keeps being served
+        assertEquals(2, lookups.get());
+        assertArrayEquals(new InetAddress[] {address(10, 0, 0, 1)}, stale);
+
+        //AND: the next refresh picks the new address up
+        answers.add(new InetAddress[] {address(10, 0, 0, 9)});
+        advance(Duration.ofSeconds(50));
+        resolver.resolve(HOST);
+        assertArrayEquals(new InetAddress[] {address(10, 0, 0, 9)}, resolver.resolve(HOST));
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void resolve_unknownHost_failureCachedForNegativeTtl() throws Exception {
+
+        //GIVEN: a host that does not resolve, remembered for 5s
+        answers.add(null);
+        answers.add(new InetAddress[] {address(10, 0, 0, 1)});
+        CachingDnsResolver resolver = resolver(new DnsProperties());
+
+        //WHEN: resolving it twice
+        assertThrows(UnknownHostException.class, () -> resolver.resolve(HOST));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve(HOST));
+
+        //THEN: it was looked up once
+        assertEquals(1, lookups.get());
+        assertEquals(2, registry.get("proxy.dns.failures").functionCounter().count());
+
+        //AND: it is looked up again once the negative TTL is over
+        advance(Duration.ofSeconds(6));
+        assertArrayEquals(new InetAddress[] {address(10, 0, 0, 1)}, resolver.resolve(HOST));
+        assertEquals(2, lookups.get());
+    }
+
+    private CachingDnsResolver resolver(DnsProperties properties) {
+        DnsResolver delegate = host -> {
+            InetAddress[] answer = answers.get(Math.min(lookups.getAndIncrement(), answers.size() - 1));
+            if (answer == null) {
+                throw new UnknownHostException(host);
+            }
+            return answer;
+        };
+        CachingDnsResolver resolver = new CachingDnsResolver(properties, delegate, nanos::get, Runnable::run);
+        resolver.bindTo(registry);
+        return resolver;
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    private static InetAddress address(int a, int b, int c, int d) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] {(byte) a, (byte) b, (byte) c, (byte) d});
+    }
+}
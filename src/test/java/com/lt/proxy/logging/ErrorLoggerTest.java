@@ -0,0 +1,111 @@
+package com.lt.proxy.logging;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.lt.proxy.config.ErrorLoggingProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ErrorLoggerTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(ErrorLogger.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void attach() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void detach() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    void error_burstOfOneType_loggedUpToLimitPerType() {
+
+        //GIVEN: an error logger allowing two lines per type and interval
+        ErrorLoggingProperties properties = new ErrorLoggingProperties();
+        properties.setMaxPerInterval(2);
+        properties.setInterval(Duration.ofHours(1));
+        ErrorLogger errorLogger = new ErrorLogger(properties);
+
+        //WHEN: logging a burst of one exception type and a single one of another type
+        for (int i = 0; i < 5; i++) {
+            errorLogger.error(new ProxyException("some error", null, false));
+        }
+        errorLogger.warn(new ServiceUnavailableException("some other error"));
+
+        //THEN: only the occurrences over the limit of the bursting type are suppressed
+        assertEquals(3, errorLogger.suppressedCount());
+    }
+
+    @Test
+    void error_newIntervalAfterSuppression_suppressedCountReported() throws InterruptedException {
+
+        //GIVEN: an error logger allowing one line per type every 50ms
+        ErrorLoggingProperties properties = new ErrorLoggingProperties();
+        properties.setMaxPerInterval(1);
+        properties.setInterval(Duration.ofMillis(50));
+        ErrorLogger errorLogger = new ErrorLogger(properties);
+
+        //AND: three occurrences in the first interval
+        for (int i = 0; i < 3; i++) {
+            errorLogger.error(new ProxyException("some error", null, false));
+        }
+
+        //WHEN: the same error happens again once the interval is over
+        Thread.sleep(80);
+        errorLogger.error(new ProxyException("some error", null, false));
+
+        //THEN: the first and last occurrences are logged, the last one with the two suppressed in between
+        assertEquals(
+            List.of(
+                "Exception handled: com.lt.proxy.exception.ProxyException: some error",
+                "Exception handled (2 similar suppressed): com.lt.proxy.exception.ProxyException: some error"
+            ),
+            messages()
+        );
+    }
+
+    @Test
+    void error_limitReachedForOneType_otherTypesStillLogged() {
+
+        //GIVEN: an error logger allowing one line per type and interval
+        ErrorLoggingProperties properties = new ErrorLoggingProperties();
+        properties.setMaxPerInterval(1);
+        properties.setInterval(Duration.ofHours(1));
+        ErrorLogger errorLogger = new ErrorLogger(properties);
+
+        //WHEN: logging two exceptions of each of two types, interleaved
+        for (int i = 0; i < 2; i++) {
+            errorLogger.error(new ProxyException("some error", null, false));
+            errorLogger.error(new ServiceUnavailableException("some other error"));
+        }
+
+        //THEN: each type has its own budget: the first of each is logged, the second suppressed
+        assertEquals(
+            List.of(
+                "Exception handled: com.lt.proxy.exception.ProxyException: some error",
+                "Exception handled: com.lt.proxy.exception.ServiceUnavailableException: some other error"
+            ),
+            messages()
+        );
+        assertEquals(2, errorLogger.suppressedCount());
+    }
+
+    private List<String> messages() {
+        return appender.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,84 @@
+package com.lt.proxy.logging;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import com.lt.proxy.config.HeaderLoggingProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HeaderLoggerTest {
+
+    private static final String PROXY_URL = "http://www.google.com";
+
+    @Test
+    void format_allHeaders_sortedDump() {
+
+        //GIVEN: a header logger without filters
+        HeaderLogger headerLogger = new HeaderLogger(new HeaderLoggingProperties());
+
+        //WHEN: formatting some response headers
+        String dump = headerLogger.format(PROXY_URL, responseHeaders());
+
+        //THEN: every header is dumped sorted by name
+        assertEquals(
+            "\n" +
+            "==================================\n" +
+            "Response Headers (proxy url: http://www.google.com)\n" +
+            "==================================\n" +
+            "Content-Type :: [text/html]\n" +
+            "Set-Cookie :: [some-cookie]\n" +
+            "some-header-name :: [some-header-value]",
+            dump
+        );
+    }
+
+    @Test
+    void format_includeAndExcludeLists_onlyAllowedHeaders() {
+
+        //GIVEN: a header logger allowing two headers, one of them also denied
+        HeaderLoggingProperties properties = new HeaderLoggingProperties();
+        properties.setInclude(Set.of("content-type", "SET-COOKIE"));
+        properties.setExclude(Set.of("set-cookie"));
+        HeaderLogger headerLogger = new HeaderLogger(properties);
+
+        //WHEN: formatting some response headers
+        String dump = headerLogger.format(PROXY_URL, responseHeaders());
+
+        //THEN: only the allowed and not denied header is dumped
+        assertEquals(
+            "\n" +
+            "==================================\n" +
+            "Response Headers (proxy url: http://www.google.com)\n" +
+            "==================================\n" +
+            "Content-Type :: [text/html]",
+            dump
+        );
+    }
+
+    @Test
+    void log_queueFull_entriesDroppedWithoutBlocking() {
+
+        //GIVEN: an asynchronous header logger whose queue is not being drained
+        HeaderLoggingProperties properties = new HeaderLoggingProperties();
+        properties.setQueueCapacity(1);
+        HeaderLogger headerLogger = new HeaderLogger(properties);
+
+        //WHEN: logging more responses than the queue holds
+        for (int i = 0; i < 3; i++) {
+            headerLogger.log(PROXY_URL, responseHeaders());
+        }
+
+        //THEN: the extra entries are dropped
+        assertEquals(2, headerLogger.droppedCount());
+    }
+
+    private static HttpHeaders responseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_HTML);
+        headers.set("some-header-name", "some-header-value");
+        headers.set(HttpHeaders.SET_COOKIE, "some-cookie");
+        return headers;
+    }
+}
@@ -0,0 +1,89 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakersTest {
+
+    private static final String FAILING_URL = "http://failing.com/some-path";
+    private static final String HEALTHY_URL = "http://healthy.com/some-path";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void acquire_hostFailing_fastFailsOnlyThatHost() {
+
+        //GIVEN: breakers opening after two calls with a failure rate of 50% or more
+        CircuitBreakers circuitBreakers = circuitBreakers(Duration.ofMinutes(1));
+
+        //WHEN: two calls to the same host fail with a server error
+        for (int i = 0; i < 2; i++) {
+            circuitBreakers.acquire(FAILING_URL).failure(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+        }
+
+        //THEN: further calls to that host fail fast while other hosts are still called
+        ServiceUnavailableException exception =
+            assertThrows(
+                ServiceUnavailableException.class,
+                () -> circuitBreakers.acquire(FAILING_URL)
+            );
+        assertEquals("Circuit breaker open, not calling upstream host: failing.com", exception.getMessage());
+        assertDoesNotThrow(() -> circuitBreakers.acquire(HEALTHY_URL).success());
+        assertEquals(1, registry.get("proxy.circuit.breaker.hosts").tag("state", "open").gauge().value());
+        assertEquals(1, registry.get("proxy.circuit.breaker.not.permitted").tag("host", "failing.com").counter().count());
+        assertEquals(0, registry.get("proxy.circuit.breaker.not.permitted").tag("host", "healthy.com").counter().count());
+        assertEquals(1, registry.get("proxy.circuit.breaker.transitions").tags("host", "failing.com", "to", "open").counter().count());
+    }
+
+    @Test
+    void acquire_upstreamClientErrors_breakerStaysClosed() {
+
+        //GIVEN: breakers opening after two calls with a failure rate of 50% or more
+        CircuitBreakers circuitBreakers = circuitBreakers(Duration.ofMinutes(1));
+
+        //WHEN: calls to a host are answered with NOT_FOUND
+        for (int i = 0; i < 5; i++) {
+            circuitBreakers.acquire(FAILING_URL).failure(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        }
+
+        //THEN: the host is still called
+        assertDoesNotThrow(() -> circuitBreakers.acquire(FAILING_URL));
+    }
+
+    @Test
+    void acquire_openBreakerAfterWaitDuration_halfOpenProbeCloses() throws Exception {
+
+        //GIVEN: an open breaker with a short wait duration
+        CircuitBreakers circuitBreakers = circuitBreakers(Duration.ofMillis(50));
+        for (int i = 0; i < 2; i++) {
+            circuitBreakers.acquire(FAILING_URL).failure(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+        }
+
+        //WHEN: the wait duration elapses and the probing call succeeds
+        Thread.sleep(100);
+        circuitBreakers.acquire(FAILING_URL).success();
+
+        //THEN: the breaker closes again
+        assertEquals(1, registry.get("proxy.circuit.breaker.hosts").tag("state", "closed").gauge().value());
+    }
+
+    private CircuitBreakers circuitBreakers(Duration waitDurationInOpenState) {
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setMinimumNumberOfCalls(2);
+        properties.setPermittedCallsInHalfOpenState(1);
+        properties.setWaitDurationInOpenState(waitDurationInOpenState);
+        return new CircuitBreakers(properties, new ProxyMetrics(registry, new MetricsProperties()));
+    }
+}
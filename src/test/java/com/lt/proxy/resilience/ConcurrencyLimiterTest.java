@@ -0,0 +1,109 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    private static final String SLOW_URL = "http://slow.com/some-path";
+    private static final String FAST_URL = "http://fast.com/some-path";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void acquire_hostLimitReached_onlyThatHostRejectedWithRetryAfter() {
+
+        //GIVEN: at most two calls in flight per host
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setHostInitialLimit(2);
+        properties.setRetryAfter(Duration.ofSeconds(3));
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(properties, new ProxyMetrics(registry, new MetricsProperties()));
+
+        //WHEN: two calls to a host are in flight
+        limiter.acquire(SLOW_URL);
+        ConcurrencyLimiter.Permit second = limiter.acquire(SLOW_URL);
+
+        //THEN: a third one to that host is rejected while other hosts are still called
+        ServiceUnavailableException exception =
+            assertThrows(
+                ServiceUnavailableException.class,
+                () -> limiter.acquire(SLOW_URL)
+            );
+        assertEquals("Concurrency limit of 2 calls reached for upstream host: slow.com", exception.getMessage());
+        assertEquals(Duration.ofSeconds(3), exception.getRetryAfter());
+        assertDoesNotThrow(() -> limiter.acquire(FAST_URL).success());
+        assertEquals(1, registry.get("proxy.concurrency.limit.rejected").tags("scope", "host", "host", "slow.com").counter().count());
+        assertEquals(0, registry.get("proxy.concurrency.limit.rejected").tags("scope", "global", "host", "all").counter().count());
+
+        //AND: a slot is available again once a call completes
+        second.success();
+        assertDoesNotThrow(() -> limiter.acquire(SLOW_URL));
+        assertEquals(2, registry.get("proxy.concurrency.in.flight").gauge().value());
+        assertEquals(2, ((Map<?, ?>) ((Map<?, ?>) limiter.stats().get("hosts")).get("slow.com")).get("inFlight"));
+    }
+
+    @Test
+    void sample_steadyRtt_limitGrows() {
+
+        //GIVEN: a limit of 20 with its slots in use
+        ConcurrencyLimiter.VegasLimit limit = new ConcurrencyLimiter.VegasLimit(20, 2, 200);
+
+        //WHEN: calls keep answering in the same time
+        for (int i = 0; i < 50; i++) {
+            limit.sample(limit.gradient(TimeUnit.MILLISECONDS.toNanos(10)), limit.get(), false);
+        }
+
+        //THEN: the limit grows
+        assertTrue(limit.get() > 40, "limit " + limit.get());
+    }
+
+    @Test
+    void sample_hostGradients_globalLimitFollowsEachHostsOwnBaseline() {
+
+        //GIVEN: a global limit of 20 fed by a 1ms host and a 100ms host, each with its own baseline
+        ConcurrencyLimiter.VegasLimit global = new ConcurrencyLimiter.VegasLimit(20, 2, 200);
+        ConcurrencyLimiter.VegasLimit fast = new ConcurrencyLimiter.VegasLimit(20, 2, 200);
+        ConcurrencyLimiter.VegasLimit slow = new ConcurrencyLimiter.VegasLimit(20, 2, 200);
+
+        //WHEN: both hosts keep answering at their usual speed
+        for (int i = 0; i < 50; i++) {
+            global.sample(fast.gradient(TimeUnit.MILLISECONDS.toNanos(1)), global.get(), false);
+            global.sample(slow.gradient(TimeUnit.MILLISECONDS.toNanos(100)), global.get(), false);
+        }
+
+        //THEN: the slow host is not mistaken for queueing, the global limit grows
+        assertTrue(global.get() > 20, "limit " + global.get());
+        assertEquals(0, global.rttNoLoad());
+    }
+
+    @Test
+    void sample_risingRttOrDrops_limitShrinks() {
+
+        //GIVEN: a limit of 100 that measured a 10ms no-load RTT
+        ConcurrencyLimiter.VegasLimit limit = new ConcurrencyLimiter.VegasLimit(100, 2, 200);
+        limit.sample(limit.gradient(TimeUnit.MILLISECONDS.toNanos(10)), 100, false);
+
+        //WHEN: calls take twice as long
+        for (int i = 0; i < 10; i++) {
+            limit.sample(limit.gradient(TimeUnit.MILLISECONDS.toNanos(20)), limit.get(), false);
+        }
+
+        //THEN: the limit shrinks, and an upstream error cuts it further
+        int queued = limit.get();
+        assertTrue(queued < 100, "limit " + queued);
+        limit.sample(Double.NaN, queued, true);
+        assertEquals((int) (queued * 0.9), limit.get());
+    }
+}
@@ -0,0 +1,134 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.exception.TooManyRequestsException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final String URL = "http://www.google.com/some-path";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    @Test
+    void acquire_clientBurstSpent_rejectedUntilTokensRefill() {
+
+        //GIVEN: clients allowed 10 requests per second with a burst of 5
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setClientRate(10);
+        properties.setClientBurst(5);
+        RateLimiter limiter = limiter(properties);
+
+        //WHEN: a client spends its burst at once
+        for (int i = 4; i >= 0; i--) {
+            RateLimiter.Quota quota = limiter.acquire("ip:10.0.0.1");
+            assertTrue(quota.isAllowed());
+            assertEquals(i, quota.getRemaining());
+        }
+
+        //THEN: its next request is rejected for one token interval while other clients are not
+        RateLimiter.Quota rejected = limiter.acquire("ip:10.0.0.1");
+        assertFalse(rejected.isAllowed());
+        assertEquals(1, rejected.getResetSeconds());
+        assertTrue(limiter.acquire("ip:10.0.0.2").isAllowed());
+        assertEquals(1, registry.get("proxy.rate.limit.rejected").tag("scope", "client").counter().count());
+
+        //AND: tokens come back at the configured rate
+        advance(Duration.ofMillis(250));
+        assertTrue(limiter.acquire("ip:10.0.0.1").isAllowed());
+        assertTrue(limiter.acquire("ip:10.0.0.1").isAllowed());
+        assertFalse(limiter.acquire("ip:10.0.0.1").isAllowed());
+    }
+
+    @Test
+    void acquireHost_hostBurstSpent_rejected() {
+
+        //GIVEN: an upstream host allowed a burst of 3 requests
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setHostRate(1);
+        properties.setHostBurst(3);
+        RateLimiter limiter = limiter(properties);
+
+        //WHEN: it is called three times
+        for (int i = 0; i < 3; i++) {
+            assertDoesNotThrow(() -> limiter.acquireHost(URL));
+        }
+
+        //THEN: any further call to that host is rejected until its next token, other hosts are still called
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class, () -> limiter.acquireHost(URL));
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+        assertDoesNotThrow(() -> limiter.acquireHost("http://www.bing.com"));
+        assertEquals(1, registry.get("proxy.rate.limit.rejected").tags("scope", "host", "host", "www.google.com").counter().count());
+    }
+
+    @Test
+    void refund_tokenGivenBack_availableAgain() {
+
+        //GIVEN: a client that spent its burst of 2
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setClientRate(0.1);
+        properties.setClientBurst(2);
+        RateLimiter limiter = limiter(properties);
+        limiter.acquire("ip:10.0.0.1");
+        limiter.acquire("ip:10.0.0.1");
+
+        //WHEN: one of its requests is given its token back
+        limiter.refund("ip:10.0.0.1");
+
+        //THEN: it can make one more request, not two
+        assertTrue(limiter.acquire("ip:10.0.0.1").isAllowed());
+        assertFalse(limiter.acquire("ip:10.0.0.1").isAllowed());
+    }
+
+    @Test
+    void acquire_concurrentClients_neverMoreThanTheBurstAllowed() throws InterruptedException {
+
+        //GIVEN: a single client with a burst of 1000 and a clock that does not move
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setClientRate(1);
+        properties.setClientBurst(1000);
+        properties.setHostBurst(100000);
+        RateLimiter limiter = limiter(properties);
+
+        //WHEN: eight threads race for 500 tokens each
+        AtomicLong allowed = new AtomicLong();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.acquire("ip:10.0.0.1").isAllowed()) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //THEN: exactly the burst is handed out
+        assertEquals(1000, allowed.get());
+    }
+
+    private RateLimiter limiter(RateLimitProperties properties) {
+        return new RateLimiter(properties, new ProxyMetrics(registry, new MetricsProperties()), nanos::get);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
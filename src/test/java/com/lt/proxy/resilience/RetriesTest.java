@@ -0,0 +1,154 @@
+package com.lt.proxy.resilience;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.RetryProperties;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetriesTest {
+
+    private static final String URL = "http://slow.com/some-path";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private Retries retries;
+
+    @AfterEach
+    void close() {
+        retries.close();
+    }
+
+    @Test
+    void execute_retryableFailures_retriedUntilSuccess() {
+
+        //GIVEN: an upstream failing twice with a connection error then a BAD_GATEWAY
+        retries = retries(new RetryProperties());
+        AtomicInteger calls = new AtomicInteger();
+
+        //WHEN: executing the call
+        String result = retries.execute(URL, () -> {
+            switch (calls.incrementAndGet()) {
+                case 1:
+                    throw new ResourceAccessException("Connection reset");
+                case 2:
+                    throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+                default:
+                    return "some response body";
+            }
+        }, discarded -> { });
+
+        //THEN: the third attempt answers and both retries are counted
+        assertEquals("some response body", result);
+        assertEquals(3, calls.get());
+        assertEquals(2, registry.get("proxy.upstream.retries").counter().count());
+    }
+
+    @Test
+    void execute_clientErrorOrAttemptsExhausted_notRetried() {
+
+        //GIVEN: at most two attempts per call
+        RetryProperties properties = new RetryProperties();
+        properties.setMaxAttempts(2);
+        retries = retries(properties);
+        AtomicInteger calls = new AtomicInteger();
+
+        //WHEN: the upstream answers NOT_FOUND, then keeps answering SERVICE_UNAVAILABLE
+        assertThrows(HttpClientErrorException.class, () -> retries.execute(URL, () -> {
+            calls.incrementAndGet();
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        }, discarded -> { }));
+        assertThrows(HttpServerErrorException.class, () -> retries.execute(URL, () -> {
+            calls.incrementAndGet();
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+        }, discarded -> { }));
+
+        //THEN: the NOT_FOUND is not retried and the SERVICE_UNAVAILABLE is retried once
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void execute_slowAttempt_abortedAtDeadline() {
+
+        //GIVEN: a 100ms deadline and backoffs longer than that
+        RetryProperties properties = new RetryProperties();
+        properties.setDeadline(Duration.ofMillis(100));
+        properties.setInitialBackoff(Duration.ofSeconds(1));
+        retries = retries(properties);
+        AtomicInteger calls = new AtomicInteger();
+
+        //WHEN: the upstream never answers
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> retries.execute(URL, () -> {
+            calls.incrementAndGet();
+            awaitAbort();
+            throw new ResourceAccessException("Request aborted");
+        }, discarded -> { }));
+
+        //THEN: the attempt is aborted once the deadline is spent and not retried
+        assertEquals(1, calls.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void execute_primaryAttemptSlowerThanP95_hedgeWinsAndPrimaryIsAborted() {
+
+        //GIVEN: hedging after the host's p95 latency, known after a few fast calls
+        RetryProperties properties = new RetryProperties();
+        properties.setHedgeEnabled(true);
+        properties.setHedgeMinSamples(16);
+        properties.setHedgeMinDelay(Duration.ofMillis(20));
+        retries = retries(properties);
+        for (int i = 0; i < 16; i++) {
+            retries.execute(URL, () -> "fast", discarded -> { });
+        }
+
+        //AND: a primary attempt that hangs until aborted, while the next attempt answers right away
+        AtomicInteger calls = new AtomicInteger();
+        List<String> discarded = new CopyOnWriteArrayList<>();
+
+        //WHEN: executing the call
+        String result = retries.execute(URL, () -> {
+            if (calls.incrementAndGet() == 1) {
+                awaitAbort();
+                throw new ResourceAccessException("Request aborted");
+            }
+            return "hedged response body";
+        }, discarded::add);
+
+        //THEN: the hedge answers, the primary attempt was aborted and both are counted
+        assertEquals("hedged response body", result);
+        assertEquals(2, calls.get());
+        assertTrue(discarded.isEmpty());
+        assertEquals(1, registry.get("proxy.upstream.hedges").counter().count());
+        assertEquals(1, registry.get("proxy.upstream.hedges.won").counter().count());
+    }
+
+    private Retries retries(RetryProperties properties) {
+        return new Retries(properties, new ProxyMetrics(registry, new MetricsProperties()));
+    }
+
+    private static void awaitAbort() {
+        CountDownLatch aborted = new CountDownLatch(1);
+        Cancellation.register(aborted::countDown);
+        try {
+            aborted.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
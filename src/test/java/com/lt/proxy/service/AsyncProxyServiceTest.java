@@ -0,0 +1,259 @@
+package com.lt.proxy.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.AsyncProperties;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.HeaderLoggingProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.config.UrlPolicyProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ResourceNotFoundException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.url.UrlPolicy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncProxyServiceTest {
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final AsyncProperties properties = new AsyncProperties();
+    private final ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    private HttpServer upstream;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/ok", exchange -> respond(exchange, 200, "some response body"));
+        upstream.createContext("/accented", exchange -> respond(exchange, 200, "réponse accentuée"));
+        upstream.createContext("/missing", exchange -> respond(exchange, 404, ""));
+        upstream.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(encoded)) {
+                gzip.write("some compressed body".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, encoded.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                encoded.writeTo(out);
+            }
+        });
+        upstream.createContext("/bomb", exchange -> {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(encoded)) {
+                gzip.write(new byte[1024 * 1024]);
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, encoded.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                encoded.writeTo(out);
+            }
+        });
+        upstream.createContext("/slow", exchange -> {
+            sleep(500);
+            respond(exchange, 200, "too late");
+        });
+        upstream.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.stop(0);
+    }
+
+    @Test
+    void callUrl_validProxyUrl_bodyCompleted() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = upstreamUrl("/ok");
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        String responseBody = service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS);
+
+        //THEN: the response body from the proxy call is returned
+        assertEquals("some response body", responseBody);
+    }
+
+    @Test
+    void callUrl_nonAsciiBody_byteCountsRecorded() throws Exception {
+
+        //GIVEN: a valid http-protocol url whose upstream body has multi-byte UTF-8 characters
+        final String proxyUrl = upstreamUrl("/accented");
+        int encodedLength = "réponse accentuée".getBytes(StandardCharsets.UTF_8).length;
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS);
+
+        //THEN: bytes are counted in and out, not characters
+        assertEquals(encodedLength, proxyMetrics.getRegistry().get("proxy.upstream.bytes.in").summary().totalAmount());
+        assertEquals(encodedLength, proxyMetrics.getRegistry().get("proxy.client.bytes.out").summary().totalAmount());
+    }
+
+    @Test
+    void callUrl_gzipEncodedUpstreamBody_decodedBodyCompleted() throws Exception {
+
+        //GIVEN: a valid http-protocol url whose upstream answers with a gzip-encoded body
+        final String proxyUrl = upstreamUrl("/gzip");
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        String responseBody = service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS);
+
+        //THEN: the decoded response body is returned
+        assertEquals("some compressed body", responseBody);
+    }
+
+    @Test
+    void callUrl_gzipBodyDecodingPastMaxBodySize_completedWithProxyException() {
+
+        //GIVEN: bodies capped at 64KB and an upstream answering a few KB that gunzip to 1MB
+        properties.setMaxBodySize(DataSize.ofKilobytes(64));
+        final String proxyUrl = upstreamUrl("/bomb");
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        ExecutionException exception =
+            assertThrows(
+                ExecutionException.class,
+                () -> service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS)
+            );
+
+        //THEN: the call fails instead of decoding the whole body
+        assertEquals(ProxyException.class, exception.getCause().getClass());
+    }
+
+    @Test
+    void callUrl_notFoundResponse_completedWithResourceNotFoundException() {
+
+        //GIVEN: a valid http-protocol url to proxy that does not exist upstream
+        final String proxyUrl = upstreamUrl("/missing");
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        ExecutionException exception =
+            assertThrows(
+                ExecutionException.class,
+                () -> service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS)
+            );
+
+        //THEN: the same error mapping as the blocking call is applied
+        assertEquals(ResourceNotFoundException.class, exception.getCause().getClass());
+        assertEquals("Could not found: " + proxyUrl, exception.getCause().getMessage());
+    }
+
+    @Test
+    void callUrl_deadlineExceeded_completedWithProxyException() {
+
+        //GIVEN: an upstream slower than the per-request deadline
+        properties.setDeadline(Duration.ofMillis(100));
+        final String proxyUrl = upstreamUrl("/slow");
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        ExecutionException exception =
+            assertThrows(
+                ExecutionException.class,
+                () -> service().callUrl(proxyUrl).get(5, TimeUnit.SECONDS)
+            );
+
+        //THEN: the call fails once the deadline is reached
+        assertEquals(ProxyException.class, exception.getCause().getClass());
+    }
+
+    @Test
+    void callUrl_resultCancelled_exchangeAbortedBeforeUpstreamAnswers() throws Exception {
+
+        //GIVEN: an asynchronous call to an upstream that takes 500ms to answer
+        AsyncProxyService service = service();
+        CompletableFuture<String> result = service.callUrl(upstreamUrl("/slow"));
+
+        //WHEN: the caller gives up on the call
+        result.cancel(true);
+
+        //THEN: the exchange is aborted and its in-flight slot freed without waiting for the upstream
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        while (service.inFlightCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, service.inFlightCount());
+    }
+
+    @Test
+    void callUrl_inFlightLimitReached_exceptionThrown() {
+
+        //GIVEN: no in-flight capacity left
+        properties.setMaxInFlight(0);
+
+        //WHEN: requesting an asynchronous call to the proxy url
+        ServiceUnavailableException exception =
+            assertThrows(
+                ServiceUnavailableException.class,
+                () -> service().callUrl(upstreamUrl("/ok"))
+            );
+
+        //THEN: the call is rejected without going upstream
+        assertEquals(
+            "Too many in-flight asynchronous requests, cannot proxy to: " + upstreamUrl("/ok"),
+            exception.getMessage()
+        );
+    }
+
+    private AsyncProxyService service() {
+        return new AsyncProxyService(
+            httpClient,
+            new ResponseCache(new CacheProperties()),
+            new HeaderLogger(new HeaderLoggingProperties()),
+            proxyMetrics,
+            new CircuitBreakers(new CircuitBreakerProperties(), proxyMetrics),
+            new NegativeCache(new NegativeCacheProperties()),
+            new ConcurrencyLimiter(new ConcurrencyLimitProperties(), proxyMetrics),
+            new UrlPolicy(new UrlPolicyProperties()),
+            new RateLimiter(new RateLimitProperties(), proxyMetrics),
+            properties
+        );
+    }
+
+    private String upstreamUrl(String path) {
+        return "http://localhost:" + upstream.getAddress().getPort() + path;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
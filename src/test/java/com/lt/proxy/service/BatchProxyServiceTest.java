@@ -0,0 +1,108 @@
+package com.lt.proxy.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.BatchProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+import com.lt.proxy.metrics.ProxyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchProxyServiceTest {
+
+    private final AsyncProxyService asyncProxyServiceMock = mock(AsyncProxyService.class);
+    private final ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    private final BatchProperties properties = new BatchProperties();
+
+    @Test
+    void callUrls_moreUrlsThanConcurrency_callsCappedAndResultsInCompletionOrder() throws Exception {
+
+        //GIVEN: a batch of three urls with at most two upstream calls at once
+        properties.setConcurrency(2);
+        Map<String, CompletableFuture<String>> calls = new ConcurrentHashMap<>();
+        when(asyncProxyServiceMock.callUrl(anyString())).thenAnswer(invocation -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.put(invocation.getArgument(0), call);
+            return call;
+        });
+        List<BatchResult> results = new ArrayList<>();
+
+        //WHEN: the batch is started
+        CompletableFuture<Void> done = service().callUrls(List.of("http://a.com", "http://b.com", "http://c.com"), results::add);
+
+        //THEN: only the first two urls are called
+        assertEquals(2, calls.size());
+
+        //AND: the third one is called once a slot frees up, results are reported as they complete
+        calls.get("http://b.com").complete("b");
+        assertEquals(3, calls.size());
+        calls.get("http://c.com").completeExceptionally(new ServiceUnavailableException("some error"));
+        calls.get("http://a.com").complete("a");
+        done.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("http://b.com", "http://c.com", "http://a.com"), urls(results));
+        assertEquals(503, results.get(1).getStatus());
+        assertEquals("a", results.get(2).getBody());
+    }
+
+    @Test
+    void callUrls_deadlineExceeded_pendingUrlsReportedAsGatewayTimeout() throws Exception {
+
+        //GIVEN: a short batch deadline and an upstream that never answers one of the urls
+        properties.setDeadline(Duration.ofMillis(100));
+        when(asyncProxyServiceMock.callUrl("http://fast.com")).thenReturn(CompletableFuture.completedFuture("fast"));
+        CompletableFuture<String> never = new CompletableFuture<>();
+        when(asyncProxyServiceMock.callUrl("http://never.com")).thenReturn(never);
+        List<BatchResult> results = new ArrayList<>();
+
+        //WHEN: the batch is run
+        service().callUrls(List.of("http://never.com", "http://fast.com"), results::add).get(5, TimeUnit.SECONDS);
+
+        //THEN: the batch completes at its deadline, reporting the unanswered url as timed out
+        assertEquals(List.of("http://fast.com", "http://never.com"), urls(results));
+        assertEquals(504, results.get(1).getStatus());
+
+        //AND: the call still running is cancelled instead of holding its upstream connection
+        assertTrue(never.isCancelled());
+    }
+
+    @Test
+    void callUrls_tooManyUrls_exceptionThrown() {
+
+        //GIVEN: a batch larger than the accepted maximum
+        properties.setMaxUrls(1);
+
+        //WHEN: the batch is requested
+        ProxyException exception = assertThrows(
+            ProxyException.class,
+            () -> service().callUrls(List.of("http://a.com", "http://b.com"), result -> { })
+        );
+
+        //THEN: it is rejected before any upstream call
+        assertTrue(exception.getMessage().contains("at most 1"));
+    }
+
+    private BatchProxyService service() {
+        return new BatchProxyService(asyncProxyServiceMock, proxyMetrics, properties);
+    }
+
+    private static List<String> urls(List<BatchResult> results) {
+        List<String> urls = new ArrayList<>();
+        results.forEach(result -> urls.add(result.getUrl()));
+        return urls;
+    }
+}
@@ -1,30 +1,85 @@
 package com.lt.proxy.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.buffer.ProxyBody;
+import com.lt.proxy.cache.NegativeCache;
+import com.lt.proxy.cache.ResponseCache;
+import com.lt.proxy.config.CacheProperties;
+import com.lt.proxy.config.CircuitBreakerProperties;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.config.ConcurrencyLimitProperties;
+import com.lt.proxy.config.HeaderLoggingProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.NegativeCacheProperties;
+import com.lt.proxy.config.RetryProperties;
+import com.lt.proxy.config.RateLimitProperties;
+import com.lt.proxy.config.UrlPolicyProperties;
 import com.lt.proxy.exception.ProxyException;
 import com.lt.proxy.exception.ResourceNotFoundException;
+import com.lt.proxy.exception.TooManyRequestsException;
+import com.lt.proxy.logging.HeaderLogger;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.lt.proxy.resilience.CircuitBreakers;
+import com.lt.proxy.resilience.ConcurrencyLimiter;
+import com.lt.proxy.resilience.RateLimiter;
+import com.lt.proxy.resilience.Retries;
+import com.lt.proxy.url.UrlPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class ProxyServiceTest {
 
     @Mock private RestTemplate restTemplateMock;
+    @Spy private StreamCopier streamCopier = new StreamCopier(4);
+    @Spy private ResponseCache responseCache = new ResponseCache(new CacheProperties());
+    @Spy private RequestCoalescer requestCoalescer = new RequestCoalescer(new CoalescingProperties());
+    @Spy private HeaderLogger headerLogger = new HeaderLogger(synchronousHeaderLogging());
+    @Spy private ProxyMetrics proxyMetrics = new ProxyMetrics(new SimpleMeterRegistry(), new MetricsProperties());
+    @Spy private CircuitBreakers circuitBreakers = new CircuitBreakers(new CircuitBreakerProperties(), proxyMetrics);
+    @Spy private NegativeCache negativeCache = new NegativeCache(new NegativeCacheProperties());
+    @Spy private Retries retries = new Retries(new RetryProperties(), proxyMetrics);
+    @Spy private ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(new ConcurrencyLimitProperties(), proxyMetrics);
+    @Spy private UrlPolicy urlPolicy = new UrlPolicy(new UrlPolicyProperties());
+    @Spy private RateLimiter rateLimiter = new RateLimiter(hostRateLimits(), proxyMetrics);
 
     @InjectMocks
     private ProxyService proxyService;
@@ -33,26 +88,57 @@ class ProxyServiceTest {
     void getResponseHeaders_validProxyUrl_success() {
 
         //GIVEN: a valid http-protocol url to proxy
-        final String proxyUrl = "http://www.google.com";
+        final String proxyUrl = "http://www.google.com/";
 
         //AND: the proxy call is successful
         HttpHeaders expectedResponseHeaders = new HttpHeaders();
         expectedResponseHeaders.setContentType(MediaType.TEXT_HTML);
         expectedResponseHeaders.set("some-header-name", "some-header-value");
         String expectedResponseBody = "some response body";
-        ResponseEntity<String> responseEntity =
-            new ResponseEntity<>(expectedResponseBody, expectedResponseHeaders, HttpStatus.OK);
+        ResponseEntity<ProxyBody> responseEntity =
+            new ResponseEntity<>(ProxyBody.of(expectedResponseBody), expectedResponseHeaders, HttpStatus.OK);
         when(
-            restTemplateMock.exchange(proxyUrl, HttpMethod.GET, null, String.class)
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
         ).thenReturn(responseEntity);
 
         //WHEN: requesting a call to the proxy url
-        String responseBody = proxyService.callUrl(proxyUrl);
+        String responseBody = proxyService.callUrl(proxyUrl).getText();
 
         //THEN: the response body from the proxy call are returned
         assertEquals(expectedResponseBody, responseBody);
     }
 
+    @Test
+    void getResponseHeaders_cacheableResponse_servedFromCacheThenRevalidated() {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/";
+
+        //AND: the upstream response must be revalidated on every use but carries an ETag
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamHeaders.setCacheControl("no-cache");
+        upstreamHeaders.setETag("\"v1\"");
+        when(
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
+        ).thenReturn(new ResponseEntity<>(ProxyBody.of("some response body"), upstreamHeaders, HttpStatus.OK));
+
+        //AND: the upstream answers NOT_MODIFIED to the conditional GET
+        HttpHeaders conditionalHeaders = new HttpHeaders();
+        conditionalHeaders.setIfNoneMatch("\"v1\"");
+        when(
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, new HttpEntity<>(conditionalHeaders), ProxyBody.class)
+        ).thenReturn(new ResponseEntity<>(null, upstreamHeaders, HttpStatus.NOT_MODIFIED));
+
+        //WHEN: requesting the proxy url twice
+        String firstBody = proxyService.callUrl(proxyUrl).getText();
+        String secondBody = proxyService.callUrl(proxyUrl).getText();
+
+        //THEN: the second call is answered with the cached body after revalidation
+        assertEquals("some response body", firstBody);
+        assertEquals("some response body", secondBody);
+        assertEquals(1L, responseCache.stats().get("notModified"));
+    }
+
     @Test
     void getResponseHeaders_validProxyUrl_notFoundResponse_exceptionThrown() {
 
@@ -62,7 +148,7 @@ class ProxyServiceTest {
         //AND: the proxy call results in NOT_FOUND
         HttpClientErrorException internalException = new HttpClientErrorException(HttpStatus.NOT_FOUND);
         when(
-            restTemplateMock.exchange(proxyUrl, HttpMethod.GET, null, String.class)
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
         ).thenThrow(internalException);
 
         //WHEN: requesting a call to the proxy url
@@ -84,6 +170,71 @@ class ProxyServiceTest {
             internalException,
             exception.getCause()
         );
+        assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @Test
+    void getResponseHeaders_validProxyUrl_repeatedNotFound_servedFromNegativeCache() {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/some-path";
+
+        //AND: the proxy call results in NOT_FOUND
+        when(
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
+        ).thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        //WHEN: requesting the proxy url twice
+        ResourceNotFoundException first = assertThrows(ResourceNotFoundException.class, () -> proxyService.callUrl(proxyUrl));
+        ResourceNotFoundException second = assertThrows(ResourceNotFoundException.class, () -> proxyService.callUrl(proxyUrl));
+
+        //THEN: the second call is answered with the same error, without the upstream response, and without going upstream
+        assertEquals(first.getMessage(), second.getMessage());
+        assertNull(second.getCause());
+        verify(restTemplateMock, times(1)).exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class);
+        assertEquals(1L, negativeCache.hitCount());
+    }
+
+    @Test
+    void getResponseHeaders_equivalentSpellingsOverHostRateLimit_TooManyRequestsExceptionThrown() {
+
+        //GIVEN: a host allowed two upstream calls, answering OK
+        when(
+            restTemplateMock.exchange(any(URI.class), eq(HttpMethod.GET), isNull(), eq(ProxyBody.class))
+        ).thenReturn(new ResponseEntity<>(ProxyBody.of("some response body"), new HttpHeaders(), HttpStatus.OK));
+
+        //WHEN: calling it through different spellings of its name
+        proxyService.callUrl("http://www.google.com/first");
+        proxyService.callUrl("http://WWW.GOOGLE.COM:80/second");
+        TooManyRequestsException exception =
+            assertThrows(
+                TooManyRequestsException.class,
+                () -> proxyService.callUrl("HTTP://www.Google.com/third")
+            );
+
+        //THEN: they share the host's bucket, the third call is rejected without going upstream
+        assertEquals("Rate limit of upstream host www.google.com exceeded, retry in 100s", exception.getMessage());
+        verify(restTemplateMock, times(2)).exchange(any(URI.class), eq(HttpMethod.GET), isNull(), eq(ProxyBody.class));
+    }
+
+    @Test
+    void getResponseHeaders_validProxyUrl_serviceUnavailableOnce_retried() {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/some-path";
+
+        //AND: the upstream answers SERVICE_UNAVAILABLE once, then OK
+        when(
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
+        ).thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+         .thenReturn(new ResponseEntity<>(ProxyBody.of("some response body"), new HttpHeaders(), HttpStatus.OK));
+
+        //WHEN: requesting a call to the proxy url
+        String responseBody = proxyService.callUrl(proxyUrl).getText();
+
+        //THEN: the call is retried and answered with the second response
+        assertEquals("some response body", responseBody);
+        verify(restTemplateMock, times(2)).exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class);
     }
 
     @Test
@@ -95,7 +246,7 @@ class ProxyServiceTest {
         //AND: the proxy call response is neither OK nor NOT_FOUND
         HttpClientErrorException internalException = new HttpClientErrorException(HttpStatus.GATEWAY_TIMEOUT);
         when(
-            restTemplateMock.exchange(proxyUrl, HttpMethod.GET, null, String.class)
+            restTemplateMock.exchange(URI.create(proxyUrl), HttpMethod.GET, null, ProxyBody.class)
         ).thenThrow(internalException);
 
         //WHEN: requesting a call to the proxy url
@@ -147,4 +298,150 @@ class ProxyServiceTest {
             exception.getMessage()
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void streamUrl_validProxyUrl_bodyCopiedWithUpstreamHeaders() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/";
+
+        //AND: the upstream answers with a body larger than the copy buffer
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamHeaders.setContentType(MediaType.TEXT_HTML);
+        upstreamHeaders.setContentLength(18);
+        byte[] upstreamBody = "some response body".getBytes(StandardCharsets.UTF_8);
+        ClientHttpResponse upstreamResponse = mock(ClientHttpResponse.class);
+        when(upstreamResponse.getStatusCode()).thenReturn(HttpStatus.OK);
+        when(upstreamResponse.getHeaders()).thenReturn(upstreamHeaders);
+        when(upstreamResponse.getBody()).thenReturn(new ByteArrayInputStream(upstreamBody));
+        when(
+            restTemplateMock.execute(eq(URI.create(proxyUrl)), eq(HttpMethod.GET), isNull(), any(ResponseExtractor.class))
+        ).thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(3).extractData(upstreamResponse));
+
+        //WHEN: streaming the proxy url
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpHeaders[] sinkHeaders = new HttpHeaders[1];
+        proxyService.streamUrl(proxyUrl, null, (status, headers) -> {
+            sinkHeaders[0] = headers;
+            return out;
+        });
+
+        //THEN: the upstream bytes and headers reach the sink untouched
+        assertEquals("some response body", out.toString(StandardCharsets.UTF_8));
+        assertEquals(upstreamHeaders, sinkHeaders[0]);
+    }
+
+    @Test
+    void streamUrl_clientAcceptsGzip_acceptEncodingForwardedAndBodyPassedThrough() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy, requested by a client accepting gzip
+        final String proxyUrl = "http://www.google.com/";
+
+        //AND: the upstream answers with a gzip-encoded body
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        upstreamHeaders.setContentType(MediaType.TEXT_HTML);
+        upstreamHeaders.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        byte[] upstreamBody = {0x1f, (byte) 0x8b, 8, 0};
+        ClientHttpResponse upstreamResponse = mock(ClientHttpResponse.class);
+        when(upstreamResponse.getStatusCode()).thenReturn(HttpStatus.OK);
+        when(upstreamResponse.getHeaders()).thenReturn(upstreamHeaders);
+        when(upstreamResponse.getBody()).thenReturn(new ByteArrayInputStream(upstreamBody));
+        ClientHttpRequest upstreamRequest = mock(ClientHttpRequest.class);
+        HttpHeaders upstreamRequestHeaders = new HttpHeaders();
+        when(upstreamRequest.getHeaders()).thenReturn(upstreamRequestHeaders);
+        when(
+            restTemplateMock.execute(eq(URI.create(proxyUrl)), eq(HttpMethod.GET), any(RequestCallback.class), any(ResponseExtractor.class))
+        ).thenAnswer(invocation -> {
+            invocation.<RequestCallback>getArgument(2).doWithRequest(upstreamRequest);
+            return invocation.<ResponseExtractor<?>>getArgument(3).extractData(upstreamResponse);
+        });
+
+        //WHEN: streaming the proxy url
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        proxyService.streamUrl(proxyUrl, "gzip, deflate", (status, headers) -> out);
+
+        //THEN: the client's Accept-Encoding is sent upstream and the encoded bytes are not decoded
+        assertEquals("gzip, deflate", upstreamRequestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        assertArrayEquals(upstreamBody, out.toByteArray());
+    }
+
+    @Test
+    void streamUrl_validProxyUrl_notFoundResponse_exceptionThrown() {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/some-path";
+
+        //AND: the proxy call results in NOT_FOUND
+        HttpClientErrorException internalException = new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        when(
+            restTemplateMock.execute(eq(URI.create(proxyUrl)), eq(HttpMethod.GET), isNull(), any(ResponseExtractor.class))
+        ).thenThrow(internalException);
+
+        //WHEN: streaming the proxy url
+        ResourceNotFoundException exception =
+            assertThrows(
+                ResourceNotFoundException.class,
+                () -> proxyService.streamUrl(proxyUrl, null, (status, headers) -> new ByteArrayOutputStream())
+            );
+
+        //THEN: the same error mapping as the buffered call is applied
+        assertEquals(
+            String.format(
+                "Could not found: %s",
+                proxyUrl
+            ),
+            exception.getMessage()
+        );
+    }
+
+    @Test
+    void streamUrl_clientGoneWhileCopying_exceptionRethrownUntranslated() throws Exception {
+
+        //GIVEN: a valid http-protocol url to proxy
+        final String proxyUrl = "http://www.google.com/";
+
+        //AND: the upstream answers, and I/O errors are wrapped the way RestTemplate does
+        ClientHttpResponse upstreamResponse = mock(ClientHttpResponse.class);
+        when(upstreamResponse.getStatusCode()).thenReturn(HttpStatus.OK);
+        when(upstreamResponse.getHeaders()).thenReturn(new HttpHeaders());
+        when(upstreamResponse.getBody()).thenReturn(new ByteArrayInputStream("some response body".getBytes(StandardCharsets.UTF_8)));
+        when(
+            restTemplateMock.execute(eq(URI.create(proxyUrl)), eq(HttpMethod.GET), isNull(), any(ResponseExtractor.class))
+        ).thenAnswer(invocation -> {
+            try {
+                return invocation.<ResponseExtractor<?>>getArgument(3).extractData(upstreamResponse);
+            } catch (IOException e) {
+                throw new ResourceAccessException("I/O error on GET request", e);
+            }
+        });
+
+        //WHEN: the client goes away once the response is committed
+        ResourceAccessException exception =
+            assertThrows(
+                ResourceAccessException.class,
+                () -> proxyService.streamUrl(proxyUrl, null, (status, headers) -> new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Broken pipe");
+                    }
+                })
+            );
+
+        //THEN: the client-side error is not turned into an upstream error
+        assertEquals("Broken pipe", exception.getCause().getMessage());
+    }
+
+    // Two upstream calls per host, the most any test makes
+    private static RateLimitProperties hostRateLimits() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setHostRate(0.01);
+        properties.setHostBurst(2);
+        return properties;
+    }
+
+    private static HeaderLoggingProperties synchronousHeaderLogging() {
+        HeaderLoggingProperties properties = new HeaderLoggingProperties();
+        properties.setAsync(false);
+        return properties;
+    }
+}
@@ -0,0 +1,135 @@
+package com.lt.proxy.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.CoalescingProperties;
+import com.lt.proxy.exception.ProxyException;
+import com.lt.proxy.exception.ServiceUnavailableException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private static final String KEY = "http://www.google.com/";
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_concurrentCallsSameKey_singleExecutionSharedResult() throws Exception {
+
+        //GIVEN: a slow call that is blocked until every caller has joined
+        RequestCoalescer coalescer = new RequestCoalescer(new CoalescingProperties());
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        //WHEN: several callers request the same key concurrently
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> coalescer.execute(KEY, () -> {
+                executions.incrementAndGet();
+                await(release);
+                return "some response body";
+            })));
+        }
+        awaitWaiters(coalescer, CALLERS - 1);
+        release.countDown();
+
+        //THEN: the call is executed once and every caller gets its result
+        for (Future<String> result : results) {
+            assertEquals("some response body", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals((long) CALLERS - 1, coalescer.stats().get("coalesced"));
+    }
+
+    @Test
+    void execute_sharedCallFails_sameFailureForEveryCaller() throws Exception {
+
+        //GIVEN: a call that fails once every caller has joined
+        RequestCoalescer coalescer = new RequestCoalescer(new CoalescingProperties());
+        ProxyException failure = new ProxyException("some error message");
+        CountDownLatch release = new CountDownLatch(1);
+
+        //WHEN: two callers request the same key concurrently
+        Future<String> leader = executor.submit(() -> coalescer.execute(KEY, () -> {
+            await(release);
+            throw failure;
+        }));
+        awaitInFlight(coalescer);
+        Future<String> follower = executor.submit(() -> coalescer.execute(KEY, () -> "unexpected"));
+        awaitWaiters(coalescer, 1);
+        release.countDown();
+
+        //THEN: both get the failure of the single execution
+        assertSame(failure, assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void execute_waiterCapReached_callerRejected() throws Exception {
+
+        //GIVEN: a coalescer accepting a single waiter per key
+        CoalescingProperties properties = new CoalescingProperties();
+        properties.setMaxWaiters(1);
+        RequestCoalescer coalescer = new RequestCoalescer(properties);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> coalescer.execute(KEY, () -> {
+            await(release);
+            return "some response body";
+        }));
+        awaitInFlight(coalescer);
+        Future<String> waiter = executor.submit(() -> coalescer.execute(KEY, () -> "unexpected"));
+        awaitWaiters(coalescer, 1);
+
+        //WHEN: one more caller joins the same key
+        ServiceUnavailableException exception =
+            assertThrows(
+                ServiceUnavailableException.class,
+                () -> coalescer.execute(KEY, () -> "unexpected")
+            );
+
+        //THEN: it is rejected while the admitted waiter still gets the result
+        release.countDown();
+        assertEquals("Too many concurrent requests waiting for: " + KEY, exception.getMessage());
+        assertEquals("some response body", waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitInFlight(RequestCoalescer coalescer) throws InterruptedException {
+        while ((int) coalescer.stats().get("inFlight") == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitWaiters(RequestCoalescer coalescer, long waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((long) coalescer.stats().get("coalesced") < waiters) {
+            assertTrue(System.nanoTime() < deadline, "waiters did not join in time");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.lt.proxy.timing;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import com.lt.proxy.config.TimingProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlowRequestLogTest {
+
+    @AfterEach
+    void stop() {
+        RequestTiming.current().stop();
+    }
+
+    @Test
+    void record_requestsOverThreshold_lastOnesKeptSlowestFirst() throws InterruptedException {
+
+        //GIVEN: a log of the last two requests over 5ms
+        TimingProperties properties = new TimingProperties();
+        properties.setSlowThreshold(Duration.ofMillis(5));
+        properties.setSlowLogSize(2);
+        SlowRequestLog log = new SlowRequestLog(properties);
+
+        //WHEN: recording one fast and three slow requests
+        log.record("/proxy", "http://fast.com/", 200, timing(0));
+        log.record("/proxy", "http://slow.com/1", 200, timing(10));
+        log.record("/proxy", "http://slow.com/2", 200, timing(20));
+        log.record("/proxy", "http://slow.com/3", 503, timing(30));
+
+        //THEN: only the last two slow ones are kept, slowest first, with their phases
+        Map<String, Object> stats = log.stats();
+        assertEquals(3L, stats.get("recorded"));
+        List<Map<String, Object>> requests = requests(stats);
+        assertEquals(2, requests.size());
+        assertEquals("http://slow.com/3", requests.get(0).get("proxyUrl"));
+        assertEquals(503, requests.get(0).get("status"));
+        assertEquals("http://slow.com/2", requests.get(1).get("proxyUrl"));
+        double upstreamMillis = (double) ((Map<?, ?>) requests.get(0).get("phasesMillis")).get("upstream");
+        assertTrue(upstreamMillis >= 30, "upstream phase of " + upstreamMillis + "ms");
+    }
+
+    @Test
+    void serverTiming_phasesRecorded_onlyPhasesWithTimeListed() {
+
+        //GIVEN: a request that spent 2ms connecting and 5ms waiting for the upstream
+        RequestTiming timing = RequestTiming.start();
+        RequestTiming.record(RequestTiming.Phase.CONNECT, System.nanoTime() - 2_000_000);
+        RequestTiming.record(RequestTiming.Phase.UPSTREAM, System.nanoTime() - 5_000_000);
+
+        //WHEN: building the Server-Timing header, then once the request is over
+        String header = timing.serverTiming();
+        timing.stop();
+
+        //THEN: the phases with time are listed before the total
+        assertTrue(header.matches("connect;dur=2\\.\\d{3}, upstream;dur=5\\.\\d{3}, total;dur=\\d+\\.\\d{3}"), header);
+
+        //AND: nothing is recorded or reported anymore
+        RequestTiming.record(RequestTiming.Phase.BODY, System.nanoTime() - 1_000_000);
+        assertEquals(0, timing.getNanos(RequestTiming.Phase.BODY));
+        assertNull(timing.serverTiming());
+    }
+
+    @Test
+    void serverTiming_setupUntimed_upstreamPhaseSaysSo() {
+
+        //GIVEN: a request whose upstream client resolved and connected on its own
+        RequestTiming timing = RequestTiming.start();
+        RequestTiming.recordSetupUntimed();
+        RequestTiming.record(RequestTiming.Phase.UPSTREAM, System.nanoTime() - 5_000_000);
+
+        //WHEN: building the Server-Timing header
+        String header = timing.serverTiming();
+
+        //THEN: the upstream phase is described as including that setup
+        assertTrue(header.matches("upstream;dur=5\\.\\d{3};desc=\"incl\\. dns and connect\", total;dur=\\d+\\.\\d{3}"), header);
+
+        //AND: the next request starts without it
+        assertFalse(RequestTiming.start().isSetupUntimed());
+    }
+
+    private static RequestTiming timing(long upstreamMillis) throws InterruptedException {
+        RequestTiming timing = RequestTiming.start();
+        long start = System.nanoTime();
+        if (upstreamMillis > 0) {
+            Thread.sleep(upstreamMillis);
+        }
+        RequestTiming.record(RequestTiming.Phase.UPSTREAM, start);
+        timing.stop();
+        return timing;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> requests(Map<String, Object> stats) {
+        return (List<Map<String, Object>>) stats.get("requests");
+    }
+}
@@ -0,0 +1,276 @@
+package com.lt.proxy.upstream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http2.Http2Protocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.timing.RequestTiming;
+import com.lt.proxy.timing.UpstreamTimingInterceptor;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdkClientHttpRequestFactoryTest {
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+    private final RestTemplate restTemplate = new RestTemplate(new JdkClientHttpRequestFactory(httpClient, Duration.ofSeconds(5)));
+    private final CountDownLatch released = new CountDownLatch(1);
+    private HttpServer upstream;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(encoded)) {
+                gzip.write(exchange.getRequestHeaders().getFirst("Upgrade").getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, encoded.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                encoded.writeTo(out);
+            }
+        });
+        upstream.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        upstream.createContext("/stall", exchange -> {
+            exchange.sendResponseHeaders(200, 1_000);
+            exchange.getResponseBody().write(new byte[100]);
+            exchange.getResponseBody().flush();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        upstream.createContext("/hang", exchange -> {
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        upstream.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        upstream.stop(0);
+    }
+
+    @Test
+    void exchange_upstreamWithoutHttp2_upgradeOfferedThenHttp11BodyDecoded() {
+
+        //GIVEN: an HTTP/1.1 only upstream answering with a gzip body
+
+        //WHEN: calling it through an HTTP/2 client
+        ResponseEntity<String> response = restTemplate.getForEntity(upstreamUrl("/gzip"), String.class);
+
+        //THEN: the h2c upgrade was offered, ignored, and the decoded body is returned over HTTP/1.1
+        assertEquals("h2c", response.getBody());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void exchange_clientErrorStatus_translatedByRestTemplate() {
+
+        //GIVEN: an upstream answering NOT_FOUND
+
+        //WHEN: calling it
+        HttpClientErrorException exception =
+            assertThrows(
+                HttpClientErrorException.class,
+                () -> restTemplate.getForEntity(upstreamUrl("/missing"), String.class)
+            );
+
+        //THEN: the status is reported as with the pooled client
+        assertEquals(404, exception.getRawStatusCode());
+    }
+
+    @Test
+    void exchange_requestTimeout_failsAsIoError() {
+
+        //GIVEN: an upstream never answering and a 200ms read timeout
+        RestTemplate impatient = new RestTemplate(new JdkClientHttpRequestFactory(httpClient, Duration.ofMillis(200)));
+
+        //WHEN: calling it
+        long start = System.nanoTime();
+        assertThrows(
+            ResourceAccessException.class,
+            () -> impatient.getForEntity(upstreamUrl("/hang"), String.class)
+        );
+
+        //THEN: the call fails once the timeout is spent
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void exchange_bodyStalls_failsOnceReadTimeoutSpent() {
+
+        //GIVEN: an upstream sending the headers and part of the body, then nothing, and a 200ms read timeout
+        RestTemplate impatient = new RestTemplate(new JdkClientHttpRequestFactory(httpClient, Duration.ofMillis(200)));
+
+        //WHEN: calling it
+        long start = System.nanoTime();
+        RestClientException exception =
+            assertThrows(
+                RestClientException.class,
+                () -> impatient.getForEntity(upstreamUrl("/stall"), String.class)
+            );
+
+        //THEN: reading the body fails on the read timeout instead of waiting for the upstream
+        assertTrue(exception.getCause() instanceof SocketTimeoutException);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void close_whileBodyReadBlocked_readFailsRightAway() throws Exception {
+
+        //GIVEN: a response whose body stalls, read from another thread
+        ClientHttpResponse response = new JdkClientHttpRequestFactory(httpClient, Duration.ofSeconds(5))
+            .createRequest(upstreamUrl("/stall"), HttpMethod.GET)
+            .execute();
+        CompletableFuture<Long> read = CompletableFuture.supplyAsync(() -> {
+            try (InputStream body = response.getBody()) {
+                return body.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Thread.sleep(100);
+
+        //WHEN: closing the response, as a cancelled attempt does
+        long start = System.nanoTime();
+        response.close();
+
+        //THEN: the blocked read fails without waiting for the read timeout
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> read.get(3, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof UncheckedIOException);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void exchange_timed_noDnsOrConnectPhaseUpstreamIncludesSetup() {
+
+        //GIVEN: a timed request, with the client adding the upstream phase as the pooled one does
+        RestTemplate timed = new RestTemplate(new JdkClientHttpRequestFactory(httpClient, Duration.ofSeconds(5)));
+        timed.getInterceptors().add(new UpstreamTimingInterceptor());
+        RequestTiming timing = RequestTiming.start();
+
+        //WHEN: calling a new upstream
+        try {
+            timed.getForEntity(upstreamUrl("/gzip"), String.class);
+        } finally {
+            timing.stop();
+        }
+
+        //THEN: the JDK client resolves and connects on its own, so that time is only part of the upstream phase, as noted
+        assertEquals(0, timing.getNanos(RequestTiming.Phase.DNS));
+        assertEquals(0, timing.getNanos(RequestTiming.Phase.CONNECT));
+        assertTrue(timing.getNanos(RequestTiming.Phase.UPSTREAM) > 0);
+        assertTrue(timing.isSetupUntimed());
+    }
+
+    @Test
+    void exchange_h2cUpstream_upgradedThenConcurrentRequestsMultiplexed() throws Exception {
+
+        //GIVEN: an upstream accepting h2c upgrades, answering once 4 requests are in flight at once
+        CountDownLatch inFlight = new CountDownLatch(4);
+        Tomcat tomcat = h2cUpstream(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                if ("/concurrent".equals(request.getRequestURI())) {
+                    inFlight.countDown();
+                    try {
+                        inFlight.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                response.getWriter().write(request.getProtocol() + " " + request.getRemotePort());
+            }
+        });
+        try {
+            String url = "http://localhost:" + tomcat.getConnector().getLocalPort();
+
+            //WHEN: a first request, then 4 concurrent ones
+            String first = restTemplate.getForObject(url + "/first", String.class);
+            List<CompletableFuture<String>> concurrent = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                concurrent.add(CompletableFuture.supplyAsync(() -> restTemplate.getForObject(url + "/concurrent", String.class)));
+            }
+
+            //THEN: the first request was upgraded to HTTP/2
+            assertTrue(first.startsWith("HTTP/2.0 "));
+
+            //AND: the concurrent ones were all in flight together over that same connection
+            for (CompletableFuture<String> response : concurrent) {
+                assertEquals(first, response.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    private static Tomcat h2cUpstream(HttpServlet servlet) throws Exception {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        Connector connector = new Connector();
+        connector.setPort(0);
+        connector.addUpgradeProtocol(new Http2Protocol());
+        tomcat.setConnector(connector);
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "upstream", servlet);
+        context.addServletMappingDecoded("/*", "upstream");
+        tomcat.start();
+        return tomcat;
+    }
+
+    private URI upstreamUrl(String path) {
+        return URI.create("http://localhost:" + upstream.getAddress().getPort() + path);
+    }
+}
@@ -0,0 +1,104 @@
+package com.lt.proxy.url;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import com.lt.proxy.exception.ProxyException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CanonicalUrlTest {
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+            "http://www.google.com",
+            "http://WWW.Google.com:80/",
+            "HTTP://www.google.com/#fragment",
+            "http://www.google.com/a/../",
+            "http://www.google.com./a/./.."
+        }
+    )
+    void parse_equivalentUrls_sameCanonicalUrl(String proxyUrl) {
+
+        //GIVEN: urls equivalent to http://www.google.com/
+
+        //WHEN: canonicalizing them
+        CanonicalUrl url = CanonicalUrl.parse(proxyUrl);
+
+        //THEN: they all share the same canonical url and host
+        assertEquals("http://www.google.com/", url.getUrl());
+        assertEquals("www.google.com", url.getHost());
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = {
+            "http://host:8080/%7euser/%2fdata%3A  | http://host:8080/~user/%2Fdata%3A",
+            "http://host/a b/é?q=a b&r={x}      | http://host/a%20b/%C3%A9?q=a%20b&r=%7Bx%7D",
+            "http://host/a/b/../../../c/./d?x=/.. | http://host/c/d?x=/..",
+            "http://host?q=1#frag               | http://host/?q=1",
+            "http://[::1]:9090/path             | http://[::1]:9090/path"
+        }
+    )
+    void parse_nonCanonicalUrl_normalizedAndEncoded(String proxyUrl, String expected) {
+
+        //GIVEN: a url with percent-encoded unreserved characters, characters to encode or dot segments
+
+        //WHEN: canonicalizing it
+        CanonicalUrl url = CanonicalUrl.parse(proxyUrl);
+
+        //THEN: it is reduced to its canonical form
+        assertEquals(expected, url.getUrl());
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = {
+            "http://                 | Missing host",
+            "http://user@host/       | User info is not accepted",
+            "http://host:99999/      | Invalid port",
+            "http://ho st/           | Invalid character ' ' in host",
+            "http://host..com/       | Empty host label",
+            "http://host/%zz         | Invalid percent-encoding",
+            "http://host\\@evil.com/ | Invalid character '\\' in host"
+        }
+    )
+    void parse_invalidUrl_exceptionThrown(String proxyUrl, String reason) {
+
+        //GIVEN: an invalid http url
+
+        //WHEN: canonicalizing it
+        ProxyException exception =
+            assertThrows(
+                ProxyException.class,
+                () -> CanonicalUrl.parse(proxyUrl)
+            );
+
+        //THEN: the exception tells why
+        assertEquals("Cannot proxy to " + proxyUrl + ". " + reason, exception.getMessage());
+    }
+
+    @Test
+    void parse_nonHttpProtocol_exceptionThrown() {
+
+        //GIVEN: a https url
+
+        //WHEN: canonicalizing it
+        ProxyException exception =
+            assertThrows(
+                ProxyException.class,
+                () -> CanonicalUrl.parse("https://www.google.com")
+            );
+
+        //THEN: only http is accepted
+        assertEquals(
+            "Cannot proxy to https://www.google.com. Only HTTP protocol URI are accepted. Proxy URL must start with: http://",
+            exception.getMessage()
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package com.lt.proxy.url;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import com.lt.proxy.config.UrlPolicyProperties;
+import com.lt.proxy.exception.ProxyException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UrlPolicyTest {
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+            "http://example.com/",
+            "http://API.Example.com/",
+            "http://a.b.example.com/",
+            "http://internal.net:8080/"
+        }
+    )
+    void canonicalize_allowedHost_canonicalUrlReturned(String proxyUrl) {
+
+        //GIVEN: example.com and its subdomains, and internal.net alone, are allowed
+        UrlPolicy policy = policy(Set.of("example.com", "*.example.com", "internal.net"), Set.of());
+
+        //WHEN: canonicalizing a url to one of them
+        String url = policy.canonicalize(proxyUrl);
+
+        //THEN: the url is accepted
+        assertEquals(CanonicalUrl.parse(proxyUrl).getUrl(), url);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+            "http://notexample.com/",
+            "http://example.com.evil.org/",
+            "http://api.internal.net/",
+            "http://net/"
+        }
+    )
+    void canonicalize_hostNotAllowed_exceptionThrown(String proxyUrl) {
+
+        //GIVEN: example.com and its subdomains, and internal.net alone, are allowed
+        UrlPolicy policy = policy(Set.of("example.com", "*.example.com", "internal.net"), Set.of());
+
+        //WHEN: canonicalizing a url to another host
+        ProxyException exception =
+            assertThrows(
+                ProxyException.class,
+                () -> policy.canonicalize(proxyUrl)
+            );
+
+        //THEN: the url is rejected
+        assertEquals(
+            "Cannot proxy to " + proxyUrl + ". Host " + CanonicalUrl.parse(proxyUrl).getHost() + " is not allowed",
+            exception.getMessage()
+        );
+    }
+
+    @Test
+    void canonicalize_deniedHost_exceptionThrownEvenIfAllowed() {
+
+        //GIVEN: any host is allowed but the metadata service and *.corp.local
+        UrlPolicy policy = policy(Set.of("*"), Set.of("169.254.169.254", "*.corp.local."));
+
+        //THEN: denied hosts are rejected whatever their spelling, others are accepted
+        assertThrows(ProxyException.class, () -> policy.canonicalize("http://169.254.169.254/latest/meta-data"));
+        assertThrows(ProxyException.class, () -> policy.canonicalize("http://DB.Corp.Local./"));
+        assertEquals("http://corp.local/", policy.canonicalize("http://corp.local"));
+        assertEquals("http://www.google.com/", policy.canonicalize("http://www.google.com"));
+    }
+
+    private static UrlPolicy policy(Set<String> allowed, Set<String> denied) {
+        UrlPolicyProperties properties = new UrlPolicyProperties();
+        properties.setAllowedHosts(allowed);
+        properties.setDeniedHosts(denied);
+        return new UrlPolicy(properties);
+    }
+}
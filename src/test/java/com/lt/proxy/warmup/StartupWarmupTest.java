@@ -0,0 +1,139 @@
+package com.lt.proxy.warmup;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.client.RestTemplate;
+import com.lt.proxy.buffer.BodyBuffers;
+import com.lt.proxy.buffer.ProxyBodyHttpMessageConverter;
+import com.lt.proxy.config.BufferProperties;
+import com.lt.proxy.config.MetricsProperties;
+import com.lt.proxy.config.UpstreamClientProperties;
+import com.lt.proxy.config.WarmupProperties;
+import com.lt.proxy.metrics.ProxyMetrics;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class StartupWarmupTest {
+
+    private final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final List<String> upstreamCalls = new CopyOnWriteArrayList<>();
+    private final ApplicationEventPublisher eventPublisherMock = mock(ApplicationEventPublisher.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer upstream;
+
+    StartupWarmupTest() {
+        restTemplate.getMessageConverters().add(0, new ProxyBodyHttpMessageConverter(new BodyBuffers(new BufferProperties())));
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            upstreamCalls.add(request.getURI().getHost());
+            return execution.execute(request, body);
+        });
+    }
+
+    @AfterEach
+    void close() {
+        connectionManager.close();
+        if (upstream != null) {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void run_upstreamHostsConfigured_connectionsPooledWhileNotReady() throws Exception {
+
+        //GIVEN: an upstream host to open two connections to, without proxy calls
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.start();
+        String host = "localhost:" + upstream.getAddress().getPort();
+        WarmupProperties properties = new WarmupProperties();
+        properties.getHosts().add(host);
+        properties.setIterations(0);
+
+        //WHEN: warming up
+        warmup(properties).run(null);
+
+        //THEN: both connections are idle in the pool, ready for the first requests
+        HttpRoute route = new HttpRoute(new HttpHost("localhost", upstream.getAddress().getPort()));
+        assertEquals(2, connectionManager.getStats(route).getAvailable());
+        assertTrue(upstreamCalls.isEmpty());
+
+        //AND: readiness was refused meanwhile and the warm-up duration is reported
+        ArgumentCaptor<AvailabilityChangeEvent<?>> event = ArgumentCaptor.forClass(AvailabilityChangeEvent.class);
+        verify(eventPublisherMock).publishEvent(event.capture());
+        assertEquals(ReadinessState.REFUSING_TRAFFIC, event.getValue().getState());
+        assertTrue(registry.find("proxy.warmup.duration").timeGauge() != null);
+    }
+
+    @Test
+    void exercise_iterationsConfigured_proxyCallsAnsweredByLocalStub() {
+
+        //GIVEN: 20 warm-up calls from 2 threads
+        WarmupProperties properties = new WarmupProperties();
+        properties.setIterations(20);
+        properties.setThreads(2);
+
+        //WHEN: warming up
+        AtomicInteger failures = new AtomicInteger();
+        int calls = warmup(properties).exercise(System.nanoTime() + TimeUnit.SECONDS.toNanos(10), failures);
+
+        //THEN: every call went through the upstream client to the stub upstream and succeeded
+        assertEquals(20, calls);
+        assertEquals(0, failures.get());
+        assertEquals(20, upstreamCalls.size());
+        assertTrue(upstreamCalls.stream().allMatch("127.0.0.1"::equals));
+    }
+
+    @Test
+    void run_iterationsConfigured_sharedMetricsUntouched() {
+
+        //GIVEN: 20 warm-up calls
+        WarmupProperties properties = new WarmupProperties();
+        properties.setIterations(20);
+
+        //WHEN: warming up
+        StartupWarmup warmup = warmup(properties);
+        Map<Meter.Id, List<Double>> before = measurements();
+        warmup.run(null);
+
+        //THEN: the calls were made
+        assertEquals(20, upstreamCalls.size());
+
+        //AND: the shared metrics are as they were, without stub host series, limiter or breaker meters
+        assertEquals(before, measurements());
+    }
+
+    private Map<Meter.Id, List<Double>> measurements() {
+        return registry.getMeters().stream()
+                       .filter(meter -> !meter.getId().getName().equals("proxy.warmup.duration"))
+                       .collect(Collectors.toMap(Meter::getId, meter -> StreamSupport.stream(meter.measure().spliterator(), false)
+                                                                                     .map(Measurement::getValue)
+                                                                                     .collect(Collectors.toList())));
+    }
+
+    private StartupWarmup warmup(WarmupProperties properties) {
+        return new StartupWarmup(properties, new UpstreamClientProperties(), restTemplate, connectionManager,
+                                 eventPublisherMock, new ProxyMetrics(registry, new MetricsProperties()));
+    }
+}